@@ -0,0 +1,443 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import static org.jcaki.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A bounded memory counter for streams with too many distinct elements to count exactly. it combines two summaries:
+ * <ul>
+ * <li>a Count-Min Sketch for point queries. {@link #getCount(Object)} never under estimates, and with probability
+ * 1-delta it over estimates at most epsilon * {@link #countAll()}</li>
+ * <li>a Space-Saving summary that monitors a fixed amount of elements for finding the heavy hitters.
+ * any element with a count larger than countAll()/capacity is guaranteed to be monitored.</li>
+ * </ul>
+ * Memory usage depends only on epsilon, delta and capacity, not on the amount of distinct elements.
+ * Sets created with the same parameters can be merged, so sets of different shards can be combined.
+ * not thread safe.
+ */
+public class ApproximateCountingSet<T> {
+
+    private static final double DEFAULT_EPSILON = 0.0001;
+    private static final double DEFAULT_DELTA = 0.001;
+
+    private final double epsilon;
+    private final double delta;
+    private final int width;
+    private final int depth;
+    // depth rows of width counters each.
+    private final long[] sketch;
+
+    // Space-Saving summary as a min heap ordered by counts. positions keeps heap index + 1 of monitored elements.
+    private final int capacity;
+    private final CountTable<T> positions;
+    private final Object[] heapKeys;
+    private final long[] heapCounts;
+    private final long[] heapErrors;
+    private int heapSize;
+
+    private long total;
+
+    /**
+     * creates an approximate counting set.
+     *
+     * @param epsilon  relative error of point queries with respect to the total count. it must be between 0 and 1.
+     * @param delta    probability of exceeding the error bound. it must be between 0 and 1.
+     * @param capacity amount of elements monitored for heavy hitters.
+     * @throws IllegalArgumentException if parameters are out of range.
+     */
+    public ApproximateCountingSet(double epsilon, double delta, int capacity) {
+        if (epsilon <= 0 || epsilon >= 1)
+            throw new IllegalArgumentException("epsilon must be between 0 and 1. but it is:" + epsilon);
+        if (delta <= 0 || delta >= 1)
+            throw new IllegalArgumentException("delta must be between 0 and 1. but it is:" + delta);
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive. but it is:" + capacity);
+        this.epsilon = epsilon;
+        this.delta = delta;
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.depth = (int) Math.ceil(Math.log(1 / delta));
+        if ((long) width * depth > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("epsilon and delta values require a too large sketch.");
+        this.sketch = new long[width * depth];
+        this.capacity = capacity;
+        this.positions = new CountTable<T>(capacity);
+        this.heapKeys = new Object[capacity];
+        this.heapCounts = new long[capacity];
+        this.heapErrors = new long[capacity];
+    }
+
+    /**
+     * creates an approximate counting set with epsilon=0.0001 and delta=0.001
+     *
+     * @param capacity amount of elements monitored for heavy hitters.
+     */
+    public ApproximateCountingSet(int capacity) {
+        this(DEFAULT_EPSILON, DEFAULT_DELTA, capacity);
+    }
+
+    /**
+     * adds an element. and increments it's count.
+     *
+     * @param t element to add.
+     * @return estimated count of the added element.
+     * @throws NullPointerException if element is null.
+     */
+    public long add(T t) {
+        return add(t, 1);
+    }
+
+    /**
+     * adds an element. and increments it's count.
+     *
+     * @param t     element to add.
+     * @param count the count of the element to add.
+     * @return estimated count of the added element.
+     * @throws NullPointerException if element is null.
+     */
+    public long add(T t, long count) {
+        if (t == null)
+            throw new NullPointerException("Element cannot be null");
+        if (count < 0)
+            throw new IllegalArgumentException("Element count cannot be negative.");
+        total += count;
+        long estimate = Long.MAX_VALUE;
+        int h1 = hash1(t);
+        int h2 = hash2(t);
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + column(h1, h2, row);
+            sketch[index] += count;
+            if (sketch[index] < estimate)
+                estimate = sketch[index];
+        }
+        long monitored = monitor(t, count);
+        return monitored < estimate ? monitored : estimate;
+    }
+
+    /**
+     * adds a collection of elements.
+     *
+     * @param collection a collection of elements.
+     */
+    public void add(Collection<T> collection) {
+        if (collection == null)
+            throw new NullPointerException("collection cannot be null");
+        for (T t : collection) {
+            add(t);
+        }
+    }
+
+    /**
+     * adds an array of elements.
+     *
+     * @param array an array of elements to add.
+     */
+    public void add(T... array) {
+        if (array == null)
+            throw new NullPointerException("array cannot be null");
+        for (T t : array) {
+            add(t);
+        }
+    }
+
+    /**
+     * adds the counts of an exact CountingSet.
+     *
+     * @param set a CountingSet.
+     */
+    public void add(CountingSet<T> set) {
+        if (set == null)
+            throw new NullPointerException("CountingSet cannot be null");
+        CountTable<T> table = set.countTable();
+        for (int i = 0; i < table.capacity(); i++) {
+            T key = table.keyAt(i);
+            if (key != null)
+                add(key, table.countAt(i));
+        }
+    }
+
+    /**
+     * estimated count of the element. it is never smaller than the real count.
+     *
+     * @param t element
+     * @return estimated count of the element.
+     */
+    public long getCount(T t) {
+        if (t == null)
+            return 0;
+        long estimate = Long.MAX_VALUE;
+        int h1 = hash1(t);
+        int h2 = hash2(t);
+        for (int row = 0; row < depth; row++) {
+            long c = sketch[row * width + column(h1, h2, row)];
+            if (c < estimate)
+                estimate = c;
+        }
+        int position = positions.get(t);
+        if (position > 0 && heapCounts[position - 1] < estimate)
+            estimate = heapCounts[position - 1];
+        return estimate;
+    }
+
+    /**
+     * a lower bound of the count of the element. it is only available for the monitored elements.
+     *
+     * @param t element
+     * @return guaranteed count of the element. 0 if element is not monitored.
+     */
+    public long getGuaranteedCount(T t) {
+        int position = positions.get(t);
+        if (position == 0)
+            return 0;
+        return heapCounts[position - 1] - heapErrors[position - 1];
+    }
+
+    /**
+     * Sums all item's counts.
+     *
+     * @return sum of all item's count.
+     */
+    public long countAll() {
+        return total;
+    }
+
+    /**
+     * @return maximum over estimation of {@link #getCount(Object)} with probability 1-delta.
+     */
+    public long errorBound() {
+        return (long) Math.ceil(epsilon * total);
+    }
+
+    /**
+     * returns the monitored elements with largest estimated counts, descending.
+     * at most capacity elements can be returned.
+     *
+     * @param count amount of items to be fetched.
+     * @return heavy hitters sorted by estimated count.
+     */
+    public List<T> getFirstSorted(int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("count cannot be negative.");
+        Integer[] order = sortedHeapIndexes();
+        if (count > order.length)
+            count = order.length;
+        List<T> list = new ArrayList<T>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(heapKey(order[i]));
+        }
+        return list;
+    }
+
+    /**
+     * merges another ApproximateCountingSet to this one. Both sets must be created with the same parameters.
+     *
+     * @param other another set.
+     * @throws IllegalArgumentException if parameters of the sets are different.
+     */
+    public void merge(ApproximateCountingSet<T> other) {
+        checkNotNull(other, "set cannot be null.");
+        if (other.width != width || other.depth != depth || other.capacity != capacity)
+            throw new IllegalArgumentException("Sets with different parameters cannot be merged.");
+        for (int i = 0; i < sketch.length; i++) {
+            sketch[i] += other.sketch[i];
+        }
+        total += other.total;
+
+        // an element missing in a full summary may have a count up to the minimum count of that summary.
+        long myMin = heapSize == capacity ? heapCounts[0] : 0;
+        long otherMin = other.heapSize == capacity ? other.heapCounts[0] : 0;
+        int mergedSize = 0;
+        Object[] keys = new Object[heapSize + other.heapSize];
+        long[] counts = new long[keys.length];
+        long[] errors = new long[keys.length];
+        for (int i = 0; i < heapSize; i++) {
+            T key = heapKey(i);
+            int position = other.positions.get(key);
+            keys[mergedSize] = key;
+            if (position > 0) {
+                counts[mergedSize] = heapCounts[i] + other.heapCounts[position - 1];
+                errors[mergedSize] = heapErrors[i] + other.heapErrors[position - 1];
+            } else {
+                counts[mergedSize] = heapCounts[i] + otherMin;
+                errors[mergedSize] = heapErrors[i] + otherMin;
+            }
+            mergedSize++;
+        }
+        for (int i = 0; i < other.heapSize; i++) {
+            T key = other.heapKey(i);
+            if (positions.containsKey(key))
+                continue;
+            keys[mergedSize] = key;
+            counts[mergedSize] = other.heapCounts[i] + myMin;
+            errors[mergedSize] = other.heapErrors[i] + myMin;
+            mergedSize++;
+        }
+
+        // keep the elements with the largest counts.
+        long[] sortedCounts = new long[mergedSize];
+        System.arraycopy(counts, 0, sortedCounts, 0, mergedSize);
+        Arrays.sort(sortedCounts);
+        long limit = mergedSize > capacity ? sortedCounts[mergedSize - capacity] : Long.MIN_VALUE;
+        positions.clear();
+        heapSize = 0;
+        for (int i = 0; i < mergedSize && heapSize < capacity; i++) {
+            if (counts[i] > limit)
+                push(keys[i], counts[i], errors[i]);
+        }
+        for (int i = 0; i < mergedSize && heapSize < capacity; i++) {
+            if (counts[i] == limit)
+                push(keys[i], counts[i], errors[i]);
+        }
+    }
+
+    /**
+     * @return amount of monitored elements.
+     */
+    public int monitoredSize() {
+        return heapSize;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private static int hash1(Object t) {
+        int h = t.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash2(Object t) {
+        int h = (t.hashCode() ^ 0x5BD1E995) * 0x85EBCA6B;
+        return (h ^ (h >>> 13)) | 1;
+    }
+
+    // row hashes are generated as h1 + row * h2 (Kirsch-Mitzenmacher).
+    private int column(int h1, int h2, int row) {
+        return ((h1 + row * h2) & 0x7fffffff) % width;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T heapKey(int index) {
+        return (T) heapKeys[index];
+    }
+
+    /**
+     * updates the Space-Saving summary.
+     *
+     * @return the monitored count of the element.
+     */
+    private long monitor(T t, long count) {
+        int position = positions.get(t);
+        if (position > 0) {
+            int index = position - 1;
+            heapCounts[index] += count;
+            siftDown(index);
+            return heapCounts[positions.get(t) - 1];
+        }
+        if (heapSize < capacity) {
+            push(t, count, 0);
+            return count;
+        }
+        // replace the element with the minimum count. new element inherits its count as error.
+        long min = heapCounts[0];
+        positions.remove(heapKeys[0]);
+        heapKeys[0] = t;
+        heapCounts[0] = min + count;
+        heapErrors[0] = min;
+        positions.put(t, 1);
+        siftDown(0);
+        return min + count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void push(Object key, long count, long error) {
+        int index = heapSize++;
+        heapKeys[index] = key;
+        heapCounts[index] = count;
+        heapErrors[index] = error;
+        positions.put((T) key, index + 1);
+        siftUp(index);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heapCounts[parent] <= heapCounts[index])
+                break;
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && heapCounts[child + 1] < heapCounts[child])
+                child++;
+            if (heapCounts[index] <= heapCounts[child])
+                break;
+            swap(index, child);
+            index = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Object key = heapKeys[i];
+        heapKeys[i] = heapKeys[j];
+        heapKeys[j] = key;
+        long c = heapCounts[i];
+        heapCounts[i] = heapCounts[j];
+        heapCounts[j] = c;
+        long e = heapErrors[i];
+        heapErrors[i] = heapErrors[j];
+        heapErrors[j] = e;
+        positions.put(heapKey(i), i + 1);
+        positions.put(heapKey(j), j + 1);
+    }
+
+    private Integer[] sortedHeapIndexes() {
+        Integer[] order = new Integer[heapSize];
+        for (int i = 0; i < heapSize; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                long c1 = heapCounts[o1];
+                long c2 = heapCounts[o2];
+                return c2 < c1 ? -1 : (c2 > c1 ? 1 : 0);
+            }
+        });
+        return order;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An output stream that copies the bytes to a buffer and writes the full buffers to the target stream with a
+ * background thread. There are queueDepth + 1 buffers, callers fill one of them while the others are waiting
+ * to be written. If all buffers are in use, writer either waits or drops the bytes depending on the
+ * {@link SimpleTextWriter.OverflowPolicy}. Bytes of a single write call are dropped together if they fit
+ * to a buffer.
+ * <p/>
+ * {@link #flush()} does not wait for the background thread, {@link #sync()} waits until all bytes are written. This class is not thread safe.
+ */
+final class AsyncOutputStream extends OutputStream {
+
+    private static final Chunk END = new Chunk(0);
+
+    private final OutputStream out;
+    private final FileChannel channel;
+    private final SimpleTextWriter.OverflowPolicy policy;
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> pending;
+    private final Thread thread;
+    private final Object lock = new Object();
+
+    // buffer filled by the caller. null if no free buffer could be taken with DROP policy.
+    private Chunk current;
+    // guarded by lock
+    private long submitted;
+    private long completed;
+    private volatile Throwable failure;
+    private long droppedBytes;
+    private boolean closed;
+
+    private static final class Chunk {
+        final byte[] data;
+        int length;
+
+        Chunk(int size) {
+            data = new byte[size];
+        }
+    }
+
+    AsyncOutputStream(OutputStream out, int bufferSize, int queueDepth, SimpleTextWriter.OverflowPolicy policy) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("Buffer size must be positive:" + bufferSize);
+        if (queueDepth < 1)
+            throw new IllegalArgumentException("Queue depth must be positive:" + queueDepth);
+        this.out = out;
+        this.channel = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : null;
+        this.policy = policy;
+        this.free = new ArrayBlockingQueue<Chunk>(queueDepth + 1);
+        // one extra slot for the END marker.
+        this.pending = new ArrayBlockingQueue<Chunk>(queueDepth + 2);
+        for (int i = 0; i < queueDepth; i++) {
+            free.add(new Chunk(bufferSize));
+        }
+        this.current = new Chunk(bufferSize);
+        this.thread = new Thread(new Drainer(), "SimpleTextWriter-async");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private class Drainer implements Runnable {
+        public void run() {
+            while (true) {
+                Chunk chunk;
+                try {
+                    chunk = pending.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (chunk == END)
+                    return;
+                try {
+                    if (failure == null)
+                        write(chunk);
+                } catch (Throwable t) {
+                    failure = t;
+                }
+                chunk.length = 0;
+                free.add(chunk);
+                synchronized (lock) {
+                    completed++;
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        private void write(Chunk chunk) throws IOException {
+            if (channel != null) {
+                ByteBuffer bb = ByteBuffer.wrap(chunk.data, 0, chunk.length);
+                while (bb.hasRemaining()) {
+                    channel.write(bb);
+                }
+            } else
+                out.write(chunk.data, 0, chunk.length);
+        }
+    }
+
+    private void checkState() throws IOException {
+        if (closed)
+            throw new IOException("Stream is closed.");
+        Throwable t = failure;
+        if (t != null) {
+            if (t instanceof IOException)
+                throw (IOException) t;
+            throw (IOException) new IOException("Background write failed.").initCause(t);
+        }
+    }
+
+    private void submit() {
+        if (current == null || current.length == 0)
+            return;
+        synchronized (lock) {
+            submitted++;
+        }
+        // pending queue has a slot for every buffer, so this does not block.
+        pending.add(current);
+        current = null;
+    }
+
+    // takes a free buffer as current. returns false if there is none and policy is DROP.
+    private boolean takeBuffer() throws IOException {
+        if (policy == SimpleTextWriter.OverflowPolicy.DROP) {
+            current = free.poll();
+            return current != null;
+        }
+        try {
+            current = free.take();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a free buffer.");
+        }
+    }
+
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+        checkState();
+        if (current != null && current.data.length - current.length >= len) {
+            System.arraycopy(b, off, current.data, current.length, len);
+            current.length += len;
+            return;
+        }
+        // bytes that fit to a buffer are not split between buffers, so they are dropped together.
+        if (current != null && len <= current.data.length)
+            submit();
+        while (len > 0) {
+            if (current == null || current.length == current.data.length) {
+                submit();
+                if (!takeBuffer()) {
+                    droppedBytes += len;
+                    return;
+                }
+            }
+            int n = Math.min(len, current.data.length - current.length);
+            System.arraycopy(b, off, current.data, current.length, n);
+            current.length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * does not wait for the background thread. use {@link #sync()} for writing the bytes to the target.
+     */
+    public void flush() throws IOException {
+        checkState();
+    }
+
+    /**
+     * hands the current buffer to the background thread and waits until all buffers are written. Then flushes
+     * the target stream, and forces the changes to the storage device if target is a file.
+     *
+     * @throws IOException if an I/O error occurs while writing the bytes.
+     */
+    void sync() throws IOException {
+        checkState();
+        drain();
+        checkState();
+        out.flush();
+        if (channel != null)
+            channel.force(false);
+    }
+
+    // submits current buffer and waits until all submitted buffers are written.
+    private void drain() throws IOException {
+        submit();
+        synchronized (lock) {
+            while (completed < submitted) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the background writer.");
+                }
+            }
+        }
+        if (current == null && policy == SimpleTextWriter.OverflowPolicy.DROP)
+            current = free.poll();
+    }
+
+    /**
+     * @return amount of bytes dropped because there was no free buffer.
+     */
+    long droppedBytes() {
+        return droppedBytes;
+    }
+
+    /**
+     * writes the remaining buffers, stops the background thread and closes the target stream.
+     *
+     * @throws IOException if an I/O error occurs while writing the bytes.
+     */
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            drain();
+            pending.add(END);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the background writer.");
+            }
+            checkState();
+            out.flush();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+}
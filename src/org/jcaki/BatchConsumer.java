@@ -0,0 +1,30 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+/**
+ * Receives lines in batches, see {@link SimpleTextReader#forEachBatch(int, BatchConsumer)}.
+ * The lines array is reused for the next batch, so it should not be kept after the call returns.
+ */
+public interface BatchConsumer {
+    /**
+     * @param lines array containing the lines at the beginning.
+     * @param count amount of lines in the array.
+     */
+    void accept(String[] lines, int count);
+}
@@ -0,0 +1,378 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import static org.jcaki.Preconditions.checkNotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Scans the lines of a byte source without decoding them. Bytes are read in 64KB chunks to a reusable buffer and
+ * lines are found by searching the line terminator bytes. Each line is exposed as a region of the buffer
+ * ({@link #buffer()}, {@link #lineStart()}, {@link #lineLength()}) and decoded to a String only if
+ * {@link #lineAsString(java.nio.charset.Charset)} is called. The region is valid until the next call of {@link #next()}.
+ * <p/>
+ * Lines are terminated by \n, \r or \r\n, same as {@link BufferedReader#readLine()}. This only works for encodings
+ * that represent these characters with single bytes that never appear inside other characters,
+ * see {@link #isAsciiCompatible(java.nio.charset.Charset)}.
+ * <p/>
+ * The recommended usage pattern is:
+ * <pre>
+ * ByteLineScanner scanner = new ByteLineScanner(new File("filename"));
+ * try {
+ *   while (scanner.next()) {
+ *     // use scanner.buffer(), scanner.lineStart(), scanner.lineLength()
+ *   }
+ * } finally {
+ *   scanner.close();
+ * }
+ * </pre>
+ */
+public class ByteLineScanner implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MIN_SEGMENT_SIZE = 1 << 20;
+    private static final long MAX_SEGMENT_SIZE = 1 << 28;
+
+    private final ReadableByteChannel channel;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    // valid bytes are between position and limit.
+    private int position;
+    private int limit;
+    private boolean eof;
+    // if last line ended with a \r, a following \n belongs to that line terminator.
+    private boolean skipLF;
+    private int lineStart;
+    private int lineLength;
+    private long lineCount;
+    // amount of bytes dropped from the beginning of the buffer so far.
+    private long discarded;
+
+    public ByteLineScanner(ReadableByteChannel channel) {
+        checkNotNull(channel, "channel cannot be null.");
+        this.channel = channel;
+    }
+
+    public ByteLineScanner(InputStream is) {
+        checkNotNull(is, "input stream cannot be null.");
+        if (is instanceof FileInputStream)
+            this.channel = ((FileInputStream) is).getChannel();
+        else
+            this.channel = Channels.newChannel(is);
+    }
+
+    public ByteLineScanner(File file) throws IOException {
+        checkNotNull(file, "file cannot be null.");
+        this.channel = new FileInputStream(file).getChannel();
+    }
+
+    /**
+     * checks if lines of a text in the charset can be scanned at byte level. these are the charsets that encode
+     * ASCII characters with single bytes and use only bytes larger than 0x7f for other characters.
+     *
+     * @param charset charset
+     * @return true if charset is UTF-8, US-ASCII, one of ISO-8859 or windows-125x charsets.
+     */
+    public static boolean isAsciiCompatible(Charset charset) {
+        String name = charset.name().toUpperCase();
+        return name.equals("UTF-8") || name.equals("US-ASCII")
+                || name.startsWith("ISO-8859-") || name.startsWith("WINDOWS-125");
+    }
+
+    /**
+     * skips the UTF-8 BOM bytes if the source starts with them. it must be called before reading any lines.
+     *
+     * @throws IOException if an IO error occurs.
+     */
+    public void skipUtf8Bom() throws IOException {
+        if (lineCount > 0 || position > 0)
+            throw new IllegalStateException("BOM can only be skipped before reading lines.");
+        while (limit < 3 && fill()) {
+        }
+        if (limit >= 3 && buffer[0] == (byte) 0xef && buffer[1] == (byte) 0xbb && buffer[2] == (byte) 0xbf)
+            position = 3;
+    }
+
+    /**
+     * moves to the next line.
+     *
+     * @return false if there are no more lines.
+     * @throws IOException if an IO error occurs.
+     */
+    public boolean next() throws IOException {
+        int scan = position;
+        while (true) {
+            if (skipLF) {
+                if (scan == limit && !fill())
+                    return false;
+                scan = position;
+                if (buffer[position] == '\n') {
+                    position++;
+                    scan++;
+                }
+                skipLF = false;
+            }
+            while (scan < limit) {
+                byte b = buffer[scan];
+                if (b == '\n' || b == '\r') {
+                    lineStart = position;
+                    lineLength = scan - position;
+                    position = scan + 1;
+                    skipLF = b == '\r';
+                    lineCount++;
+                    return true;
+                }
+                scan++;
+            }
+            int scanned = scan - position;
+            if (!fill()) {
+                if (limit == position)
+                    return false;
+                // last line without a terminator.
+                lineStart = position;
+                lineLength = limit - position;
+                position = limit;
+                lineCount++;
+                return true;
+            }
+            scan = position + scanned;
+        }
+    }
+
+    /**
+     * moves the unread bytes to the beginning of the buffer and reads more bytes.
+     *
+     * @return false if there are no bytes to read.
+     */
+    private boolean fill() throws IOException {
+        if (eof)
+            return false;
+        int remaining = limit - position;
+        discarded += position;
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        } else if (remaining == buffer.length) {
+            // a line longer than the buffer.
+            byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, remaining);
+            buffer = grown;
+        }
+        position = 0;
+        limit = remaining;
+        int read;
+        do {
+            read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+        } while (read == 0);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    /**
+     * @return the buffer that contains the current line. contents of the buffer change when next() is called.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return start index of the current line in the buffer.
+     */
+    public int lineStart() {
+        return lineStart;
+    }
+
+    /**
+     * @return byte length of the current line, without the line terminator.
+     */
+    public int lineLength() {
+        return lineLength;
+    }
+
+    /**
+     * @return byte offset of the current line from the point the scanner started reading the source.
+     */
+    public long lineOffset() {
+        return discarded + lineStart;
+    }
+
+    /**
+     * @return amount of lines read so far.
+     */
+    public long lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * finds the first byte of the current line that is not a whitespace or control character (larger than 0x20).
+     * for ascii compatible charsets this is the start of the line after {@link String#trim()}.
+     *
+     * @return offset of the first non whitespace byte in the line. line length if there is no such byte.
+     */
+    public int firstNonWhitespace() {
+        int end = lineStart + lineLength;
+        for (int i = lineStart; i < end; i++) {
+            if ((buffer[i] & 0xff) > ' ')
+                return i - lineStart;
+        }
+        return lineLength;
+    }
+
+    /**
+     * checks if the current line starts with the given bytes.
+     *
+     * @param prefix prefix bytes.
+     * @param offset offset in the line to start checking.
+     * @return true if line contains the prefix bytes at the offset.
+     */
+    public boolean startsWith(byte[] prefix, int offset) {
+        if (offset < 0 || offset + prefix.length > lineLength)
+            return false;
+        int start = lineStart + offset;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[start + i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * decodes the current line.
+     *
+     * @param charset charset of the bytes.
+     * @return the current line as String.
+     */
+    public String lineAsString(Charset charset) {
+        try {
+            return new String(buffer, lineStart, lineLength, charset.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    /**
+     * reads all remaining lines and counts them.
+     *
+     * @return amount of remaining lines.
+     * @throws IOException if an IO error occurs.
+     */
+    public long countRemaining() throws IOException {
+        long start = lineCount;
+        while (next()) {
+        }
+        return lineCount - start;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * counts the lines of a file channel starting from the given position. file is memory mapped in segments and
+     * line terminators of the segments are counted in parallel. Lines are counted the same way as {@link #next()}.
+     *
+     * @param channel     file channel. its position is not changed.
+     * @param from        start position.
+     * @param threadCount amount of threads to use.
+     * @return line count.
+     * @throws IOException if an IO error occurs.
+     */
+    public static long countLines(final FileChannel channel, long from, int threadCount) throws IOException {
+        checkNotNull(channel, "channel cannot be null.");
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive:" + threadCount);
+        final long size = channel.size();
+        if (from >= size)
+            return 0;
+        long segmentSize = Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, (size - from) / threadCount + 1));
+        if (size - from <= segmentSize)
+            return countTerminators(channel, from, size, size) + lastLine(channel, size);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            for (long start = from; start < size; start += segmentSize) {
+                final long segmentStart = start;
+                final long segmentEnd = Math.min(size, start + segmentSize);
+                futures.add(executor.submit(new Callable<Long>() {
+                    public Long call() throws IOException {
+                        return countTerminators(channel, segmentStart, segmentEnd, size);
+                    }
+                }));
+            }
+            long count = 0;
+            for (Future<Long> future : futures) {
+                count += future.get();
+            }
+            return count + lastLine(channel, size);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Line counting is interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // 1 if the last line does not have a terminator.
+    private static int lastLine(FileChannel channel, long size) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        return last.get(0) != '\n' && last.get(0) != '\r' ? 1 : 0;
+    }
+
+    /**
+     * counts \n bytes and \r bytes that are not followed by a \n in [start,end).
+     */
+    private static long countTerminators(FileChannel channel, long start, long end, long size) throws IOException {
+        // one more byte is mapped for checking a \r\n pair on the segment boundary.
+        long mapEnd = Math.min(size, end + 1);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, mapEnd - start);
+        int length = (int) (end - start);
+        int mapLength = (int) (mapEnd - start);
+        long count = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n')
+                count++;
+            else if (b == '\r' && (i + 1 == mapLength || buffer.get(i + 1) != '\n'))
+                count++;
+        }
+        return count;
+    }
+}
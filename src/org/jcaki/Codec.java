@@ -0,0 +1,54 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression format used by {@link SimpleTextReader.Builder#compressed(Codec...)} and
+ * {@link SimpleTextWriter.Builder#compressed(Codec)}. Implementations for the formats in java.util.zip are in
+ * {@link Codecs}.
+ */
+public interface Codec {
+
+    /**
+     * checks if the compressed data starts with the given bytes.
+     *
+     * @param header first bytes of the data.
+     * @param length amount of bytes in header. it is smaller than {@link Codecs#HEADER_LENGTH} only if the data
+     *               is shorter.
+     * @return true if data is in this format.
+     */
+    boolean matches(byte[] header, int length);
+
+    /**
+     * @param is compressed input.
+     * @return an input stream that reads the decompressed bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    InputStream decompress(InputStream is) throws IOException;
+
+    /**
+     * @param os output stream for the compressed bytes.
+     * @return an output stream that compresses the bytes written to it. closing it finishes compression.
+     * @throws IOException if an I/O error occurs.
+     */
+    OutputStream compress(OutputStream os) throws IOException;
+}
@@ -0,0 +1,175 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import static org.jcaki.Preconditions.checkNotNull;
+
+import java.io.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Codecs for the compression formats in java.util.zip and helpers for detecting the format of a stream.
+ */
+public final class Codecs {
+
+    /**
+     * amount of bytes read for detecting the format of a stream.
+     */
+    public static final int HEADER_LENGTH = 16;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private Codecs() {
+    }
+
+    /**
+     * gzip format. (RFC 1952)
+     */
+    public static final Codec GZIP = new Codec() {
+        public boolean matches(byte[] header, int length) {
+            return length >= 2 && header[0] == (byte) 0x1f && header[1] == (byte) 0x8b;
+        }
+
+        public InputStream decompress(InputStream is) throws IOException {
+            return new GZIPInputStream(is, BUFFER_SIZE);
+        }
+
+        public OutputStream compress(OutputStream os) throws IOException {
+            return new GZIPOutputStream(os, BUFFER_SIZE);
+        }
+
+        public String toString() {
+            return "gzip";
+        }
+    };
+
+    /**
+     * zlib wrapped deflate format. (RFC 1950) zlib header is only two bytes and some text can start with a
+     * valid header, so this codec is not used for auto detection by default.
+     */
+    public static final Codec ZLIB = new Codec() {
+        public boolean matches(byte[] header, int length) {
+            if (length < 2)
+                return false;
+            int cmf = header[0] & 0xff;
+            int flg = header[1] & 0xff;
+            return (cmf & 0x0f) == 8 && (cmf >> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+        }
+
+        // streams do not end an Inflater or Deflater given to them, so native memory is released on close.
+        public InputStream decompress(InputStream is) throws IOException {
+            return new InflaterInputStream(is, new Inflater(), BUFFER_SIZE) {
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+
+        public OutputStream compress(OutputStream os) throws IOException {
+            return new DeflaterOutputStream(os, new Deflater(), BUFFER_SIZE) {
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        def.end();
+                    }
+                }
+            };
+        }
+
+        public String toString() {
+            return "zlib";
+        }
+    };
+
+    /**
+     * finds the format of the stream by checking its first bytes with the codecs.
+     *
+     * @param is     input stream. it must support mark and reset.
+     * @param codecs codecs to check.
+     * @return first codec that matches, or null if none of the codecs match.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static Codec detect(InputStream is, Codec... codecs) throws IOException {
+        checkNotNull(is, "input stream cannot be null.");
+        if (!is.markSupported())
+            throw new IllegalArgumentException("Input stream must support mark and reset.");
+        byte[] header = new byte[HEADER_LENGTH];
+        is.mark(HEADER_LENGTH);
+        int read = 0;
+        try {
+            while (read < header.length) {
+                int n = is.read(header, read, header.length - read);
+                if (n == -1)
+                    break;
+                read += n;
+            }
+        } finally {
+            is.reset();
+        }
+        for (Codec codec : codecs) {
+            if (codec.matches(header, read))
+                return codec;
+        }
+        return null;
+    }
+
+    /**
+     * returns a stream that reads the decompressed bytes of the input stream if it is in one of the given
+     * formats. Decompression is made with a background thread, so it runs in parallel with the reader of the
+     * returned stream. If input is not in one of the formats, it is read as is.
+     *
+     * @param is     input stream.
+     * @param codecs codecs to check. if empty, {@link #GZIP} is checked.
+     * @return an input stream with decompressed bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static InputStream decompress(InputStream is, Codec... codecs) throws IOException {
+        InputStream in = markable(is);
+        InputStream decompressed = decompressor(in, codecs);
+        return decompressed == null ? in : new PrefetchInputStream(decompressed);
+    }
+
+    static InputStream markable(InputStream is) {
+        checkNotNull(is, "input stream cannot be null.");
+        return is.markSupported() ? is : new BufferedInputStream(is, BUFFER_SIZE);
+    }
+
+    /**
+     * @param in     input stream that supports mark and reset.
+     * @param codecs codecs to check. if empty, {@link #GZIP} is checked.
+     * @return a stream that decompresses the input in the reading thread, or null if input is not in one of the
+     *         formats.
+     * @throws IOException if an I/O error occurs.
+     */
+    static InputStream decompressor(InputStream in, Codec... codecs) throws IOException {
+        if (codecs == null || codecs.length == 0)
+            codecs = new Codec[]{GZIP};
+        Codec codec = detect(in, codecs);
+        return codec == null ? null : codec.decompress(in);
+    }
+}
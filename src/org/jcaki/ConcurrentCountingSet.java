@@ -0,0 +1,309 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * A thread safe counterpart of {@link CountingSet}. Elements are distributed to lock striped count tables
+ * by their hash values, so threads counting different elements rarely wait for each other.
+ * <p/>
+ * Updates of a single element are atomic. Methods that visit all elements (sizes, sums, sorted lists)
+ * lock one stripe at a time, so they do not represent a single point in time if other threads are still adding.
+ */
+public class ConcurrentCountingSet<T> {
+
+    private static final int DEFAULT_STRIPE_COUNT = 64;
+
+    private final CountTable<T>[] stripes;
+    private final int stripeShift;
+
+    /**
+     * creates a set with given stripe count.
+     *
+     * @param stripeCount amount of independently locked tables. it is rounded up to a power of two.
+     *                    a few times of the writer thread count is usually enough.
+     * @throws IllegalArgumentException if stripeCount is not positive.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentCountingSet(int stripeCount) {
+        if (stripeCount <= 0)
+            throw new IllegalArgumentException("Stripe count must be positive:" + stripeCount);
+        int bits = 0;
+        while ((1 << bits) < stripeCount && bits < 16)
+            bits++;
+        stripes = (CountTable<T>[]) new CountTable<?>[1 << bits];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new CountTable<T>();
+        }
+        stripeShift = 32 - bits;
+    }
+
+    public ConcurrentCountingSet() {
+        this(DEFAULT_STRIPE_COUNT);
+    }
+
+    private CountTable<T> stripeFor(Object t) {
+        if (stripes.length == 1)
+            return stripes[0];
+        // high bits are used here, count tables use the low bits for their slots.
+        return stripes[(t.hashCode() * 0x9E3779B9) >>> stripeShift];
+    }
+
+    /**
+     * adds an element. and increments it's count.
+     *
+     * @param t element to add.
+     * @return the count of the added element.
+     * @throws NullPointerException if element is null.
+     */
+    public int add(T t) {
+        return add(t, 1);
+    }
+
+    /**
+     * adds an element. and increments it's count.
+     *
+     * @param t     element to add.
+     * @param count the count of the element to add.
+     * @return the count of the added element.
+     * @throws NullPointerException if element is null.
+     */
+    public int add(T t, int count) {
+        if (t == null)
+            throw new NullPointerException("Element cannot be null");
+        if (count < 0)
+            throw new IllegalArgumentException("Element count cannot be negative.");
+        CountTable<T> table = stripeFor(t);
+        synchronized (table) {
+            return table.increment(t, count);
+        }
+    }
+
+    /**
+     * adds a collection of elements.
+     *
+     * @param collection a collection of elements.
+     */
+    public void add(Collection<T> collection) {
+        if (collection == null)
+            throw new NullPointerException("collection cannot be null");
+        for (T t : collection) {
+            add(t);
+        }
+    }
+
+    /**
+     * adds an array of elements.
+     *
+     * @param array an array of elements to add.
+     */
+    public void add(T... array) {
+        if (array == null)
+            throw new NullPointerException("array cannot be null");
+        for (T t : array) {
+            add(t);
+        }
+    }
+
+    /**
+     * merges a CountingSet to this one.
+     *
+     * @param otherSet another CountingSet
+     */
+    public void add(CountingSet<T> otherSet) {
+        if (otherSet == null)
+            throw new NullPointerException("CountingSet cannot be null");
+        CountTable<T> other = otherSet.countTable();
+        for (int i = 0; i < other.capacity(); i++) {
+            T key = other.keyAt(i);
+            if (key != null)
+                add(key, other.countAt(i));
+        }
+    }
+
+    /**
+     * current count of the given element
+     *
+     * @param t element
+     * @return count of the element. if element does not exist, 0
+     */
+    public int getCount(T t) {
+        if (t == null)
+            return 0;
+        CountTable<T> table = stripeFor(t);
+        synchronized (table) {
+            return table.get(t);
+        }
+    }
+
+    /**
+     * if element exist.
+     *
+     * @param t element.
+     * @return if element exists.
+     */
+    public boolean contains(T t) {
+        if (t == null)
+            return false;
+        CountTable<T> table = stripeFor(t);
+        synchronized (table) {
+            return table.containsKey(t);
+        }
+    }
+
+    /**
+     * removes an item.
+     *
+     * @param t item to removed.
+     * @return count of the item before it is removed (if it exits). -1 otherwise.
+     */
+    public int remove(T t) {
+        if (t == null)
+            return -1;
+        CountTable<T> table = stripeFor(t);
+        synchronized (table) {
+            return table.remove(t);
+        }
+    }
+
+    /**
+     * returns the total element count of the counting set.
+     *
+     * @return element count.
+     */
+    public int size() {
+        int size = 0;
+        for (CountTable<T> table : stripes) {
+            synchronized (table) {
+                size += table.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Sums all item's counts.
+     *
+     * @return sum of all item's count.
+     */
+    public int countAll() {
+        int count = 0;
+        for (CountTable<T> table : stripes) {
+            synchronized (table) {
+                for (int i = 0; i < table.capacity(); i++) {
+                    count += table.countAt(i);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * removes the items that has a count smaller than minCount
+     *
+     * @param minCount minimum count amount to remain in the set.
+     * @return removed item count.
+     */
+    public int removeSmaller(int minCount) {
+        int removeCount = 0;
+        for (CountTable<T> table : stripes) {
+            synchronized (table) {
+                for (int i = 0; i < table.capacity(); i++) {
+                    if (table.keyAt(i) != null && table.countAt(i) < minCount) {
+                        table.removeAt(i);
+                        removeCount++;
+                    }
+                }
+            }
+        }
+        return removeCount;
+    }
+
+    /**
+     * removes the items that has a count larger than maxCount
+     *
+     * @param maxCount maximum count amount to remain in the set.
+     * @return removed item count.
+     */
+    public int removeLarger(int maxCount) {
+        int removeCount = 0;
+        for (CountTable<T> table : stripes) {
+            synchronized (table) {
+                for (int i = 0; i < table.capacity(); i++) {
+                    if (table.keyAt(i) != null && table.countAt(i) > maxCount) {
+                        table.removeAt(i);
+                        removeCount++;
+                    }
+                }
+            }
+        }
+        return removeCount;
+    }
+
+    /**
+     * returns the Elements in a list sorted by count, descending..
+     *
+     * @return Elements in a list sorted by count, descending..
+     */
+    public List<T> getSortedList() {
+        return toCountingSet().getSortedList();
+    }
+
+    /**
+     * returns the first of items sorted by count, descending.
+     * if count is larger than size complete list is returned.
+     *
+     * @param count amount of items to be fetched.
+     * @return returns the sub sorted list.
+     */
+    public List<T> getFirstSorted(int count) {
+        return toCountingSet().getFirstSorted(count);
+    }
+
+    /**
+     * returns a map of counts and the amount of the items having that count.
+     *
+     * @return a SortedMap containing count of items and their total counts.
+     * @see CountingSet#sortedCountMap()
+     */
+    public SortedMap<Integer, Integer> sortedCountMap() {
+        return toCountingSet().sortedCountMap();
+    }
+
+    /**
+     * copies the current elements and their counts to a new CountingSet.
+     *
+     * @return a new CountingSet containing the elements of this set.
+     */
+    public CountingSet<T> toCountingSet() {
+        CountingSet<T> set = new CountingSet<T>(size());
+        for (CountTable<T> table : stripes) {
+            synchronized (table) {
+                for (int i = 0; i < table.capacity(); i++) {
+                    T key = table.keyAt(i);
+                    if (key != null)
+                        set.add(key, table.countAt(i));
+                }
+            }
+        }
+        return set;
+    }
+}
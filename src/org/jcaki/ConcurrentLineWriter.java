@@ -0,0 +1,285 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import static org.jcaki.Preconditions.checkNotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes lines to a file from multiple threads. Every thread encodes its lines to its own buffer, so threads
+ * do not wait for each other while writing lines. When a buffer is full, a region at the end of the file is
+ * reserved for it with an atomic counter and the buffer is written to that region with a positional write.
+ * Buffers only contain complete lines, so lines of different threads never interleave. Order of the lines
+ * of a single thread is preserved, there is no order between the lines of different threads.
+ * <p/>
+ * {@link #flush()} and {@link #close()} write the buffers of all threads. If the writer is not closed, lines in
+ * the buffers are lost. Writer needs to be closed by calling close() preferrably in a try-finally block.
+ * Threads that stop writing before the writer is closed, like the threads of a pool, should call
+ * {@link #detach()} so their buffers are released.
+ * <p/>
+ * Every line is encoded separately, so charsets that write a byte order mark at the beginning of the encoded
+ * text (like "UTF-16") cannot be used. A charset with an explicit byte order (like "UTF-16BE") can be used
+ * instead.
+ */
+public final class ConcurrentLineWriter implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final Charset charset;
+    private final int bufferSize;
+    // end of the reserved part of the file.
+    private final AtomicLong end;
+    private final Queue<LocalBuffer> buffers = new ConcurrentLinkedQueue<LocalBuffer>();
+    private final ThreadLocal<LocalBuffer> localBuffer = new ThreadLocal<LocalBuffer>();
+    private volatile boolean closed;
+
+    /**
+     * creates a writer with the default encoding. File is overwritten.
+     *
+     * @param file file to write.
+     * @throws IOException if file cannot be opened.
+     */
+    public ConcurrentLineWriter(File file) throws IOException {
+        this(file, Charset.defaultCharset().name(), false, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * creates a writer. File is overwritten.
+     *
+     * @param file     file to write.
+     * @param encoding encoding. if null, default encoding is used.
+     * @throws IOException if file cannot be opened.
+     */
+    public ConcurrentLineWriter(File file, String encoding) throws IOException {
+        this(file, encoding, false, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param file       file to write.
+     * @param encoding   encoding. if null, default encoding is used.
+     * @param append     if true, lines are added to the end of the file. Otherwise file is overwritten.
+     * @param bufferSize size of the buffer of each thread in bytes. a buffer grows for a longer line until it
+     *                   is written to the file.
+     * @throws IOException              if file cannot be opened.
+     * @throws IllegalArgumentException if charset writes a byte order mark.
+     */
+    public ConcurrentLineWriter(File file, String encoding, boolean append, int bufferSize) throws IOException {
+        checkNotNull(file, "File cannot be null.");
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("Buffer size must be positive:" + bufferSize);
+        this.charset = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+        if (writesByteOrderMark(charset))
+            throw new IllegalArgumentException("Charsets that write a byte order mark cannot be used:" + charset);
+        this.bufferSize = bufferSize;
+        // positional writes are not possible with a FileOutputStream in append mode.
+        this.raf = new RandomAccessFile(file, "rw");
+        if (!append)
+            raf.setLength(0);
+        this.channel = raf.getChannel();
+        this.end = new AtomicLong(channel.size());
+    }
+
+    /**
+     * buffer of a thread. it is locked by its thread while writing lines, and by the flushing thread while
+     * writing it to the file.
+     */
+    private final class LocalBuffer {
+        final CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(bufferSize);
+
+        synchronized void writeLine(CharSequence line) throws IOException {
+            int lineStart = bytes.position();
+            while (!encode(line)) {
+                // line does not fit. the complete lines before it are written and line is encoded again.
+                bytes.position(lineStart);
+                if (lineStart > 0)
+                    publish();
+                else
+                    bytes = ByteBuffer.allocate(bytes.capacity() * 2);
+                lineStart = 0;
+            }
+        }
+
+        // returns false if line and the line separator does not fit to the buffer. They are encoded as a single
+        // input, so a stateful encoder returns to its initial state only once at the end of the line.
+        private boolean encode(CharSequence line) {
+            encoder.reset();
+            CharBuffer chars = CharBuffer.wrap(line);
+            if (encoder.encode(chars, bytes, false).isOverflow())
+                return false;
+            // an unpaired surrogate at the end of the line is left in the input, it is replaced at end of input.
+            if (chars.hasRemaining() && encoder.encode(chars, bytes, true).isOverflow())
+                return false;
+            CoderResult result = encoder.encode(CharBuffer.wrap(IOs.LINE_SEPARATOR), bytes, true);
+            return !result.isOverflow() && !encoder.flush(bytes).isOverflow();
+        }
+
+        synchronized void publish() throws IOException {
+            bytes.flip();
+            try {
+                int length = bytes.remaining();
+                if (length == 0)
+                    return;
+                long position = end.getAndAdd(length);
+                while (bytes.hasRemaining()) {
+                    position += channel.write(bytes, position);
+                }
+            } finally {
+                // a buffer grown for a long line is not kept.
+                if (bytes.capacity() > bufferSize)
+                    bytes = ByteBuffer.allocate(bufferSize);
+                else
+                    bytes.clear();
+            }
+        }
+    }
+
+    // an encoder that writes a byte order mark writes it every time it is reset, so the encoded length of
+    // two characters is not twice the length of one.
+    private static boolean writesByteOrderMark(Charset charset) {
+        if (!charset.canEncode())
+            return false;
+        CharsetEncoder encoder = charset.newEncoder();
+        try {
+            int one = encoder.encode(CharBuffer.wrap("a")).remaining();
+            return encoder.encode(CharBuffer.wrap("aa")).remaining() != 2 * one;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+
+    private LocalBuffer buffer() {
+        LocalBuffer buffer = localBuffer.get();
+        if (buffer == null) {
+            buffer = new LocalBuffer();
+            buffers.add(buffer);
+            localBuffer.set(buffer);
+        }
+        return buffer;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed)
+            throw new IOException("Writer is closed.");
+    }
+
+    /**
+     * adds a line separator to the line and writes it to the buffer of the current thread.
+     *
+     * @param line line to write. null is written as "null".
+     * @return this
+     * @throws IOException if writer is closed or an I/O error occurs while writing a full buffer.
+     */
+    public ConcurrentLineWriter writeLine(CharSequence line) throws IOException {
+        checkOpen();
+        buffer().writeLine(line == null ? "null" : line);
+        return this;
+    }
+
+    /**
+     * writes the lines to the buffer of the current thread.
+     *
+     * @param lines lines to write. null entries are written as "null".
+     * @return this
+     * @throws IOException if writer is closed or an I/O error occurs while writing a full buffer.
+     */
+    public ConcurrentLineWriter writeLines(Collection<? extends CharSequence> lines) throws IOException {
+        checkOpen();
+        LocalBuffer buffer = buffer();
+        for (CharSequence line : lines) {
+            buffer.writeLine(line == null ? "null" : line);
+        }
+        return this;
+    }
+
+    /**
+     * writes the buffers of all threads to the file and forces the changes to the storage device.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        for (LocalBuffer buffer : buffers) {
+            buffer.publish();
+        }
+        channel.force(false);
+    }
+
+    /**
+     * writes the buffer of the current thread to the file and releases it. If the thread writes more lines
+     * later, a new buffer is created for it. Does nothing if the thread has no buffer.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void detach() throws IOException {
+        LocalBuffer buffer = localBuffer.get();
+        if (buffer == null)
+            return;
+        try {
+            if (!closed)
+                buffer.publish();
+        } finally {
+            buffers.remove(buffer);
+            localBuffer.remove();
+        }
+    }
+
+    /**
+     * @return amount of bytes written to the file, or reserved by the writes in progress.
+     */
+    public long size() {
+        return end.get();
+    }
+
+    /**
+     * writes the buffers of all threads and closes the file. Lines written by other threads while closing
+     * may be lost.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            for (LocalBuffer buffer : buffers) {
+                buffer.publish();
+            }
+        } finally {
+            buffers.clear();
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * An open addressing hash table that maps objects to int counts. keys and counts are kept in
+ * parallel arrays, so incrementing the count of a key is a single probe sequence and does not box any values.
+ * removed slots are marked with a tombstone, so entries can be removed while the table is being scanned.
+ * <p/>
+ * Table slots can be accessed directly with {@link #capacity()}, {@link #keyAt(int)} and {@link #countAt(int)}
+ * for iterating over keys and counts without allocation. null keys are not allowed.
+ */
+final class CountTable<T> {
+
+    private static final int MIN_CAPACITY = 8;
+    private static final Object TOMBSTONE = new Object();
+
+    private Object[] keys;
+    private int[] counts;
+    // live key count.
+    private int size;
+    // live key count + tombstone count.
+    private int used;
+    private int threshold;
+    private int mask;
+    private int modCount;
+
+    CountTable(int initialSize) {
+        if (initialSize < 0)
+            throw new IllegalArgumentException("Initial size cannot be negative:" + initialSize);
+        allocate(capacityFor(initialSize));
+    }
+
+    CountTable() {
+        this(16);
+    }
+
+    private static int capacityFor(int size) {
+        // keep the load factor under 0.5 for the requested size.
+        long capacity = MIN_CAPACITY;
+        while (capacity < (long) size * 2)
+            capacity <<= 1;
+        if (capacity > 1 << 30)
+            throw new IllegalArgumentException("Size is too large for the table:" + size);
+        return (int) capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+        threshold = capacity / 4 * 3;
+        size = 0;
+        used = 0;
+    }
+
+    // mixed hash value of the key. its low bits select the first slot.
+    private static int mix(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int firstSlot(Object key) {
+        return mix(key) & mask;
+    }
+
+    /**
+     * groups the slots that contain a key. group of a key is (mix(key) & groupMask) >>> groupShift, where mix is
+     * the mixed hash value used for finding the slots.
+     *
+     * @param groupMask  mask applied to the mixed hash value.
+     * @param groupShift shift applied after the mask.
+     * @param groupCount amount of groups. all group values must be smaller than this.
+     * @return slot indexes of every group.
+     */
+    int[][] groupSlots(int groupMask, int groupShift, int groupCount) {
+        int[] sizes = new int[groupCount];
+        for (Object k : keys) {
+            if (k != null && k != TOMBSTONE)
+                sizes[(mix(k) & groupMask) >>> groupShift]++;
+        }
+        int[][] groups = new int[groupCount][];
+        for (int i = 0; i < groupCount; i++) {
+            groups[i] = new int[sizes[i]];
+        }
+        Arrays.fill(sizes, 0);
+        for (int i = 0; i < keys.length; i++) {
+            Object k = keys[i];
+            if (k != null && k != TOMBSTONE) {
+                int g = (mix(k) & groupMask) >>> groupShift;
+                groups[g][sizes[g]++] = i;
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * creates a table containing the keys and counts of the tables, which must not have common keys.
+     * Slots of the new table are split to ranges and the keys of every range are inserted by a separate task,
+     * so keys are inserted in parallel without locking and each key is inserted once. Keys whose probe sequence
+     * leaves their range are inserted by the calling thread at the end.
+     *
+     * @param tables      tables with distinct keys. they must not be modified during the operation.
+     * @param executor    executor for running the tasks.
+     * @param parallelism amount of slot ranges.
+     * @return a new table.
+     * @throws InterruptedException if calling thread is interrupted.
+     * @throws ExecutionException   if a task fails.
+     */
+    static <T> CountTable<T> union(final List<CountTable<T>> tables, ExecutorService executor, int parallelism)
+            throws InterruptedException, ExecutionException {
+        int size = 0;
+        for (CountTable<T> table : tables) {
+            size += table.size;
+        }
+        final CountTable<T> result = new CountTable<T>(size);
+        int capacityBits = Integer.numberOfTrailingZeros(result.keys.length);
+        int bits = 0;
+        while ((1 << bits) < parallelism && bits < capacityBits)
+            bits++;
+        final int rangeCount = 1 << bits;
+        final int rangeShift = capacityBits - bits;
+
+        List<Future<int[][]>> groupFutures = new ArrayList<Future<int[][]>>(tables.size());
+        for (final CountTable<T> table : tables) {
+            groupFutures.add(executor.submit(new Callable<int[][]>() {
+                public int[][] call() {
+                    return table.groupSlots(result.mask, rangeShift, rangeCount);
+                }
+            }));
+        }
+        final List<int[][]> groups = new ArrayList<int[][]>(tables.size());
+        for (Future<int[][]> future : groupFutures) {
+            groups.add(future.get());
+        }
+
+        List<Future<RangeResult>> rangeFutures = new ArrayList<Future<RangeResult>>(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            final int range = i;
+            rangeFutures.add(executor.submit(new Callable<RangeResult>() {
+                public RangeResult call() {
+                    // only this task writes to the slots between start and end.
+                    int end = (range + 1) << rangeShift;
+                    RangeResult r = new RangeResult();
+                    for (int t = 0; t < tables.size(); t++) {
+                        CountTable<T> table = tables.get(t);
+                        for (int slot : groups.get(t)[range]) {
+                            Object key = table.keys[slot];
+                            int p = result.firstSlot(key);
+                            while (p < end && result.keys[p] != null)
+                                p++;
+                            if (p == end) {
+                                r.overflowKeys.add(key);
+                                r.overflowCounts.add(table.counts[slot]);
+                            } else {
+                                result.keys[p] = key;
+                                result.counts[p] = table.counts[slot];
+                                r.inserted++;
+                            }
+                        }
+                    }
+                    return r;
+                }
+            }));
+        }
+        List<RangeResult> results = new ArrayList<RangeResult>(rangeCount);
+        for (Future<RangeResult> future : rangeFutures) {
+            RangeResult r = future.get();
+            result.size += r.inserted;
+            result.used += r.inserted;
+            results.add(r);
+        }
+        for (RangeResult r : results) {
+            for (int i = 0; i < r.overflowKeys.size(); i++) {
+                int slot = result.locate(r.overflowKeys.get(i));
+                result.keys[-slot - 1] = r.overflowKeys.get(i);
+                result.counts[-slot - 1] = r.overflowCounts.get(i);
+                result.size++;
+                result.used++;
+            }
+        }
+        result.modCount++;
+        return result;
+    }
+
+    private static class RangeResult {
+        int inserted;
+        final List<Object> overflowKeys = new ArrayList<Object>();
+        final List<Integer> overflowCounts = new ArrayList<Integer>();
+    }
+
+    /**
+     * finds the slot of the key.
+     *
+     * @param key key to search.
+     * @return slot index of the key if it exists. Otherwise (-insertion slot - 1)
+     */
+    private int locate(Object key) {
+        int slot = firstSlot(key);
+        int firstTombstone = -1;
+        while (true) {
+            Object k = keys[slot];
+            if (k == null)
+                return firstTombstone >= 0 ? -firstTombstone - 1 : -slot - 1;
+            if (k == TOMBSTONE) {
+                if (firstTombstone < 0)
+                    firstTombstone = slot;
+            } else if (k == key || k.equals(key))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void insertAt(int slot, T key, int count) {
+        if (keys[slot] == null)
+            used++;
+        keys[slot] = key;
+        counts[slot] = count;
+        size++;
+        modCount++;
+        if (used > threshold)
+            rehash();
+    }
+
+    private void rehash() {
+        Object[] oldKeys = keys;
+        int[] oldCounts = counts;
+        // if most of the used slots are tombstones, cleaning them up is enough.
+        int capacity = size >= threshold / 2 ? oldKeys.length << 1 : oldKeys.length;
+        if (capacity < 0)
+            throw new IllegalStateException("Table cannot grow any more. Size:" + size);
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            Object k = oldKeys[i];
+            if (k == null || k == TOMBSTONE)
+                continue;
+            int slot = firstSlot(k);
+            while (keys[slot] != null)
+                slot = (slot + 1) & mask;
+            keys[slot] = k;
+            counts[slot] = oldCounts[i];
+            size++;
+            used++;
+        }
+    }
+
+    /**
+     * adds delta to the count of the key. if key does not exist, it is inserted with count delta.
+     *
+     * @param key   key
+     * @param delta amount to add.
+     * @return the new count of the key.
+     */
+    int increment(T key, int delta) {
+        int slot = locate(key);
+        if (slot >= 0) {
+            counts[slot] += delta;
+            return counts[slot];
+        }
+        insertAt(-slot - 1, key, delta);
+        return delta;
+    }
+
+    /**
+     * sets the count of a key. if key does not exist, it is inserted.
+     *
+     * @param key   key
+     * @param count count value.
+     */
+    void put(T key, int count) {
+        int slot = locate(key);
+        if (slot >= 0)
+            counts[slot] = count;
+        else
+            insertAt(-slot - 1, key, count);
+    }
+
+    /**
+     * @param key key
+     * @return count of the key, 0 if key does not exist or it is null.
+     */
+    int get(Object key) {
+        if (key == null)
+            return 0;
+        int slot = locate(key);
+        return slot >= 0 ? counts[slot] : 0;
+    }
+
+    boolean containsKey(Object key) {
+        return key != null && locate(key) >= 0;
+    }
+
+    /**
+     * removes the key.
+     *
+     * @param key key
+     * @return count of the key before removal, -1 if it does not exist.
+     */
+    int remove(Object key) {
+        if (key == null)
+            return -1;
+        int slot = locate(key);
+        if (slot < 0)
+            return -1;
+        int count = counts[slot];
+        removeAt(slot);
+        return count;
+    }
+
+    /**
+     * removes the key in the slot. Other slots are not moved, so it is safe to call this while scanning slots.
+     *
+     * @param slot slot index. it must contain a key.
+     */
+    void removeAt(int slot) {
+        keys[slot] = TOMBSTONE;
+        counts[slot] = 0;
+        size--;
+        modCount++;
+    }
+
+    /**
+     * removes all keys. capacity of the table does not change.
+     */
+    void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(counts, 0);
+        size = 0;
+        used = 0;
+        modCount++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of slots in the table. Slots are indexed from 0 to capacity-1.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @param slot slot index.
+     * @return key in the slot. null if slot is empty.
+     */
+    @SuppressWarnings("unchecked")
+    T keyAt(int slot) {
+        Object k = keys[slot];
+        return k == TOMBSTONE ? null : (T) k;
+    }
+
+    /**
+     * @param slot slot index
+     * @return count in the slot. 0 if slot is empty.
+     */
+    int countAt(int slot) {
+        return counts[slot];
+    }
+
+    /**
+     * @return a live set view of the keys. Removal through the view or its iterator removes the key from the table.
+     */
+    AbstractSet<T> keySet() {
+        return new KeySet();
+    }
+
+    private class KeySet extends AbstractSet<T> {
+
+        public Iterator<T> iterator() {
+            return new KeyIterator();
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public boolean remove(Object o) {
+            return CountTable.this.remove(o) >= 0;
+        }
+    }
+
+    private class KeyIterator implements Iterator<T> {
+        int next = -1;
+        int current = -1;
+        int expectedModCount = modCount;
+
+        KeyIterator() {
+            advance();
+        }
+
+        private void advance() {
+            do {
+                next++;
+            } while (next < keys.length && keyAt(next) == null);
+        }
+
+        public boolean hasNext() {
+            return next < keys.length;
+        }
+
+        public T next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (next >= keys.length)
+                throw new NoSuchElementException();
+            current = next;
+            advance();
+            return keyAt(current);
+        }
+
+        public void remove() {
+            if (current < 0)
+                throw new IllegalStateException("next() is not called or element is already removed.");
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            removeAt(current);
+            current = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -17,26 +17,65 @@
 
 package org.jcaki;
 
+import static org.jcaki.Preconditions.checkNotNull;
+
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * En: a simple set like data structure for counting unique elements. not thread safe.
  * this is also useful for calculating histograms.
+ * <p/>
+ * Elements and their counts are stored in an open addressing table with primitive int counts,
+ * so adding elements does not create any boxed Integer or entry objects.
  */
 public class CountingSet<T> implements Iterable<T> {
 
-    private final Map<T, Integer> map;
+    private static final int DEFAULT_SORT_BUFFER_SIZE = 1 << 20;
+
+    private final CountTable<T> table;
+    // if size exceeds this value, set is pruned to autoPruneSize elements. 0 means no pruning.
+    private int autoPruneLimit;
+    private int autoPruneSize;
 
     public CountingSet(int initialSize) {
-        map = new HashMap<T, Integer>(initialSize);
+        table = new CountTable<T>(initialSize);
     }
 
+    /**
+     * creates a CountingSet with the elements and counts of the map. Map is copied, later changes
+     * to the map are not reflected to the set.
+     *
+     * @param map a map with element counts.
+     * @throws NullPointerException if map is null or it contains null keys or values.
+     * @throws IllegalArgumentException if map contains a negative count.
+     */
     public CountingSet(Map<T, Integer> map) {
-        this.map = map;
+        checkNotNull(map, "map cannot be null.");
+        table = new CountTable<T>(map.size());
+        for (Map.Entry<T, Integer> entry : map.entrySet()) {
+            replace(entry.getKey(), entry.getValue());
+        }
     }
 
     public CountingSet() {
-        map = new HashMap<T, Integer>(10000);
+        table = new CountTable<T>();
+    }
+
+    private CountingSet(CountTable<T> table) {
+        this.table = table;
+    }
+
+    /**
+     * @return the count table of this set, for the classes that read the table slots directly.
+     */
+    CountTable<T> countTable() {
+        return table;
     }
 
     /**
@@ -63,14 +102,10 @@ public class CountingSet<T> implements Iterable<T> {
             throw new NullPointerException("Element cannot be null");
         if (count < 0)
             throw new IllegalArgumentException("Element count cannot be negative.");
-        if (map.containsKey(t)) {
-            int j = map.get(t) + count;
-            map.put(t, j);
-            return j;
-        } else {
-            map.put(t, count);
-            return count;
-        }
+        int c = table.increment(t, count);
+        if (autoPruneLimit > 0 && table.size() > autoPruneLimit)
+            pruneToTopK(autoPruneSize);
+        return c;
     }
 
     /**
@@ -81,8 +116,105 @@ public class CountingSet<T> implements Iterable<T> {
     public void add(CountingSet<T> otherSet) {
         if (otherSet == null)
             throw new NullPointerException("CountingSet cannot be null");
-        for (T t : otherSet) {
-            add(t, otherSet.getCount(t));
+        CountTable<T> other = otherSet.table;
+        for (int i = 0; i < other.capacity(); i++) {
+            T key = other.keyAt(i);
+            if (key != null)
+                add(key, other.countAt(i));
+        }
+    }
+
+    /**
+     * merges the CountingSets into a new CountingSet using as many threads as available processors.
+     *
+     * @param sets sets to merge. they must not be modified during the merge.
+     * @return a new CountingSet containing the sum of counts of all sets.
+     * @see #mergeAll(java.util.Collection, int)
+     */
+    public static <T> CountingSet<T> mergeAll(Collection<CountingSet<T>> sets) {
+        return mergeAll(sets, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * merges the CountingSets into a new CountingSet. Slots of every set are partitioned to shards by the hash
+     * values of the elements once, then each shard is merged by a separate thread. Merged shards have distinct
+     * elements, so they are copied to the result set in parallel, see {@link CountTable#union}.
+     *
+     * @param sets        sets to merge. they must not be modified during the merge.
+     * @param threadCount amount of threads to use.
+     * @return a new CountingSet containing the sum of counts of all sets.
+     * @throws IllegalStateException if merging thread is interrupted.
+     */
+    public static <T> CountingSet<T> mergeAll(Collection<CountingSet<T>> sets, int threadCount) {
+        checkNotNull(sets, "sets cannot be null.");
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive:" + threadCount);
+        final List<CountTable<T>> tables = new ArrayList<CountTable<T>>(sets.size());
+        int largest = 0;
+        for (CountingSet<T> set : sets) {
+            checkNotNull(set, "sets cannot contain null.");
+            tables.add(set.table);
+            largest = Math.max(largest, set.size());
+        }
+        if (threadCount == 1 || tables.size() < 2) {
+            CountingSet<T> result = new CountingSet<T>(largest);
+            for (CountingSet<T> set : sets) {
+                result.add(set);
+            }
+            return result;
+        }
+
+        int bits = 0;
+        while ((1 << bits) < threadCount && bits < 16)
+            bits++;
+        final int shardCount = 1 << bits;
+        final int shardShift = 32 - bits;
+        final int initialShardSize = largest >> bits;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            // every table is scanned once and its slots are grouped by the high bits of the element hashes.
+            List<Future<int[][]>> splitFutures = new ArrayList<Future<int[][]>>(tables.size());
+            for (final CountTable<T> table : tables) {
+                splitFutures.add(executor.submit(new Callable<int[][]>() {
+                    public int[][] call() {
+                        return table.groupSlots(-1, shardShift, shardCount);
+                    }
+                }));
+            }
+            final List<int[][]> splits = new ArrayList<int[][]>(tables.size());
+            for (Future<int[][]> future : splitFutures) {
+                splits.add(future.get());
+            }
+            List<Future<CountTable<T>>> futures = new ArrayList<Future<CountTable<T>>>(shardCount);
+            for (int i = 0; i < shardCount; i++) {
+                final int shard = i;
+                futures.add(executor.submit(new Callable<CountTable<T>>() {
+                    public CountTable<T> call() {
+                        CountTable<T> merged = new CountTable<T>(initialShardSize);
+                        for (int t = 0; t < tables.size(); t++) {
+                            CountTable<T> table = tables.get(t);
+                            for (int slot : splits.get(t)[shard]) {
+                                merged.increment(table.keyAt(slot), table.countAt(slot));
+                            }
+                        }
+                        return merged;
+                    }
+                }));
+            }
+            List<CountTable<T>> shards = new ArrayList<CountTable<T>>(shardCount);
+            for (Future<CountTable<T>> future : futures) {
+                shards.add(future.get());
+            }
+            return new CountingSet<T>(CountTable.union(shards, executor, threadCount));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Merge is interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
     }
 
@@ -119,7 +251,7 @@ public class CountingSet<T> implements Iterable<T> {
      * @return element count.
      */
     public int size() {
-        return map.size();
+        return table.size();
     }
 
     /**
@@ -133,7 +265,7 @@ public class CountingSet<T> implements Iterable<T> {
             throw new NullPointerException("Element cannot be null");
         if (c < 0)
             throw new IllegalArgumentException("Element count cannot be negative.");
-        map.put(t, c);
+        table.put(t, c);
     }
 
     /**
@@ -143,9 +275,7 @@ public class CountingSet<T> implements Iterable<T> {
      * @return count of the element. if element does not exist, 0
      */
     public int getCount(T t) {
-        if (map.containsKey(t))
-            return map.get(t);
-        else return 0;
+        return table.get(t);
     }
 
 
@@ -156,12 +286,14 @@ public class CountingSet<T> implements Iterable<T> {
      * @return if element exists.
      */
     public boolean contains(T t) {
-        return map.containsKey(t);
+        return table.containsKey(t);
     }
 
     /**
-     * returns the first of items sorted by natural order.
+     * returns the first of items sorted by count, descending.
      * if count is larger than size complete list is returned.
+     * Only the requested amount of items are kept in memory during selection, so this is much cheaper than
+     * sorting the whole set when count is small.
      *
      * @param count amount of items to be fetched.
      * @return returns the sub sorted list.
@@ -169,30 +301,172 @@ public class CountingSet<T> implements Iterable<T> {
     public List<T> getFirstSorted(int count) {
         if (count < 0)
             throw new IllegalArgumentException("count cannot be negative.");
-        if (count > this.size())
-            count = this.size();
-        return getSortedList().subList(0, count);
+        int[] slots = topSlots(count);
+        List<T> list = new ArrayList<T>(slots.length);
+        for (int slot : slots) {
+            list.add(table.keyAt(slot));
+        }
+        return list;
+    }
+
+    /**
+     * Receives elements and their counts.
+     */
+    public interface CountConsumer<T> {
+        void accept(T element, int count);
+    }
+
+    /**
+     * calls the consumer for the first k items sorted by count, descending.
+     * if k is larger than size, all items are visited.
+     *
+     * @param k        amount of items to be visited.
+     * @param consumer consumer that receives the items and their counts in order.
+     */
+    public void forEachTopK(int k, CountConsumer<T> consumer) {
+        if (k < 0)
+            throw new IllegalArgumentException("k cannot be negative.");
+        checkNotNull(consumer, "consumer cannot be null.");
+        for (int slot : topSlots(k)) {
+            consumer.accept(table.keyAt(slot), table.countAt(slot));
+        }
     }
 
     /**
-     * removes the items that has a count smaller than minCount
+     * selects the table slots of the k items with the largest counts using a bounded min heap.
+     * Items with equal counts are ordered by their slots, same as in {@link #getSortedList()}
+     *
+     * @param k amount of items.
+     * @return slots of the items sorted by count, descending.
+     */
+    private int[] topSlots(int k) {
+        if (k > table.size())
+            k = table.size();
+        // heap root is the worst of the selected items.
+        int[] heap = new int[k];
+        int heapSize = 0;
+        if (k > 0) {
+            for (int i = 0; i < table.capacity(); i++) {
+                if (table.keyAt(i) == null)
+                    continue;
+                if (heapSize < k) {
+                    heap[heapSize] = i;
+                    siftUp(heap, heapSize++);
+                } else if (isBefore(i, heap[0])) {
+                    heap[0] = i;
+                    siftDown(heap, heapSize);
+                }
+            }
+        }
+        int[] result = new int[heapSize];
+        while (heapSize > 0) {
+            result[heapSize - 1] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize);
+        }
+        return result;
+    }
+
+    // true if item in slot1 comes before the item in slot2 in count descending order.
+    private boolean isBefore(int slot1, int slot2) {
+        int c1 = table.countAt(slot1);
+        int c2 = table.countAt(slot2);
+        return c1 > c2 || (c1 == c2 && slot1 < slot2);
+    }
+
+    private void siftUp(int[] heap, int index) {
+        int slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isBefore(heap[parent], slot))
+                break;
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int index = 0;
+        int slot = heap[0];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && isBefore(heap[child], heap[child + 1]))
+                child++;
+            if (!isBefore(slot, heap[child]))
+                break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = slot;
+    }
+
+    /**
+     * removes all items except the k items with the largest counts. Items with equal counts are kept
+     * in the same order as {@link #getSortedList()}.
+     *
+     * @param k amount of items to keep.
+     * @return removed item count.
+     */
+    public int pruneToTopK(int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("k cannot be negative.");
+        if (k >= table.size())
+            return 0;
+        int[] keep = topSlots(k);
+        Arrays.sort(keep);
+        int removeCount = 0;
+        int j = 0;
+        for (int i = 0; i < table.capacity(); i++) {
+            if (j < keep.length && keep[j] == i) {
+                j++;
+                continue;
+            }
+            if (table.keyAt(i) != null) {
+                table.removeAt(i);
+                removeCount++;
+            }
+        }
+        return removeCount;
+    }
+
+    /**
+     * sets the automatic pruning limits. once the element count exceeds maxSize after an add operation,
+     * set is pruned to the targetSize items with the largest counts. this keeps the memory usage of long
+     * running counters bounded, in the cost of losing the rare items. Counts of the remaining items are not changed.
+     *
+     * @param maxSize    maximum element count. if 0, automatic pruning is disabled.
+     * @param targetSize element count after pruning. must be smaller than maxSize. Every pruning scans the
+     *                   whole set, so a larger gap between the limits makes pruning less frequent.
+     * @throws IllegalArgumentException if limits are negative or targetSize is not smaller than a positive maxSize.
+     */
+    public void setAutoPrune(int maxSize, int targetSize) {
+        if (maxSize < 0 || targetSize < 0)
+            throw new IllegalArgumentException("Prune limits cannot be negative.");
+        // with equal limits every new element would trigger a full scan.
+        if (maxSize > 0 && targetSize >= maxSize)
+            throw new IllegalArgumentException("targetSize must be smaller than maxSize.");
+        this.autoPruneLimit = maxSize;
+        this.autoPruneSize = targetSize;
+    }
+
+    /**
+     * removes the items that has a count smaller than minCount. items are removed during a single scan
+     * of the set, no temporary collections are created.
      *
      * @param minCount minimum count amount to remain in the set.
-     * @return reduced set.
+     * @return removed item count.
      */
     public int removeSmaller(int minCount) {
-        Set<T> keys = map.keySet();
-        Set<T> toRemove = new HashSet<T>();
         int removeCount = 0;
-        for (T key : keys) {
-            if (map.get(key) < minCount) {
-                toRemove.add(key);
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.keyAt(i) != null && table.countAt(i) < minCount) {
+                table.removeAt(i);
                 removeCount++;
             }
         }
-        for (T t : toRemove) {
-            map.remove(t);
-        }
         return removeCount;
     }
 
@@ -207,31 +481,32 @@ public class CountingSet<T> implements Iterable<T> {
      */
     public SortedMap<Integer, Integer> sortedCountMap() {
         CountingSet<Integer> cs = new CountingSet<Integer>();
-        for (T key : map.keySet()) {
-            cs.add(map.get(key));
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.keyAt(i) != null)
+                cs.add(table.countAt(i));
+        }
+        SortedMap<Integer, Integer> result = new TreeMap<Integer, Integer>();
+        for (Integer count : cs) {
+            result.put(count, cs.getCount(count));
         }
-        return new TreeMap<Integer, Integer>(cs.map);
+        return result;
     }
 
     /**
-     * removes the items that has a count larger than minCount
+     * removes the items that has a count larger than maxCount. items are removed during a single scan
+     * of the set, no temporary collections are created.
      *
      * @param maxCount maximum count amount to remain in the set.
-     * @return reduced set.
+     * @return removed item count.
      */
     public int removeLarger(int maxCount) {
-        Set<T> keys = map.keySet();
-        Set<T> toRemove = new HashSet<T>();
         int removeCount = 0;
-        for (T key : keys) {
-            if (map.get(key) > maxCount) {
-                toRemove.add(key);
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.keyAt(i) != null && table.countAt(i) > maxCount) {
+                table.removeAt(i);
                 removeCount++;
             }
         }
-        for (T t : toRemove) {
-            map.remove(t);
-        }
         return removeCount;
     }
 
@@ -243,9 +518,8 @@ public class CountingSet<T> implements Iterable<T> {
      */
     public int sizeSmaller(int amount) {
         int count = 0;
-        Set<T> keys = map.keySet();
-        for (T key : keys) {
-            if (getCount(key) < amount)
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.keyAt(i) != null && table.countAt(i) < amount)
                 count++;
         }
         return count;
@@ -258,11 +532,7 @@ public class CountingSet<T> implements Iterable<T> {
      * @return count of the item before it is removed (if it exits). -1 otherwise.
      */
     public int remove(T t) {
-        Integer i = map.remove(t);
-        if (i == null)
-            return -1;
-        else
-            return i;
+        return table.remove(t);
     }
 
 
@@ -274,9 +544,8 @@ public class CountingSet<T> implements Iterable<T> {
      */
     public int sizeLarger(int amount) {
         int count = 0;
-        Set<T> keys = map.keySet();
-        for (T key : keys) {
-            if (getCount(key) > amount)
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.keyAt(i) != null && table.countAt(i) > amount)
                 count++;
         }
         return count;
@@ -291,10 +560,12 @@ public class CountingSet<T> implements Iterable<T> {
      */
     public int totalCount(int from, int to) {
         int count = 0;
-        Set<T> keys = map.keySet();
-        for (T key : keys) {
-            if (getCount(key) >= from && getCount(key) < to)
-                count += map.get(key);
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.keyAt(i) == null)
+                continue;
+            int c = table.countAt(i);
+            if (c >= from && c < to)
+                count += c;
         }
         return count;
     }
@@ -306,10 +577,9 @@ public class CountingSet<T> implements Iterable<T> {
      */
     public int maxValue() {
         int max = 0;
-        Set<T> keys = map.keySet();
-        for (T key : keys) {
-            if (getCount(key) > max)
-                max = getCount(key);
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.keyAt(i) != null && table.countAt(i) > max)
+                max = table.countAt(i);
         }
         return max;
     }
@@ -321,10 +591,9 @@ public class CountingSet<T> implements Iterable<T> {
      */
     public int minValue() {
         int min = Integer.MAX_VALUE;
-        Set<T> keys = map.keySet();
-        for (T key : keys) {
-            if (getCount(key) < min)
-                min = getCount(key);
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.keyAt(i) != null && table.countAt(i) < min)
+                min = table.countAt(i);
         }
         return min;
     }
@@ -337,10 +606,11 @@ public class CountingSet<T> implements Iterable<T> {
      */
     public List<T> getItemsForValue(int value) {
         List<T> keys = new ArrayList<T>();
-        for (T key : map.keySet())
-            if (map.get(key) == value) {
+        for (int i = 0; i < table.capacity(); i++) {
+            T key = table.keyAt(i);
+            if (key != null && table.countAt(i) == value)
                 keys.add(key);
-            }
+        }
         return keys;
     }
 
@@ -353,22 +623,319 @@ public class CountingSet<T> implements Iterable<T> {
      */
     public List<T> getItemsForValue(int from, int to) {
         List<T> keys = new ArrayList<T>();
-        for (T key : map.keySet())
-            if (getCount(key) >= from && getCount(key) < to)
+        for (int i = 0; i < table.capacity(); i++) {
+            T key = table.keyAt(i);
+            if (key == null)
+                continue;
+            int c = table.countAt(i);
+            if (c >= from && c < to)
                 keys.add(key);
+        }
         return keys;
     }
 
 
     /**
-     * counts the items those count is smaller than amount
+     * percentage of the total count of items those value is between "from" and "to" ("to" exclusive)
      *
      * @param from from
      * @param to   to
-     * @return count.
+     * @return percentage of the total count in the range.
      */
     public double countPercent(int from, int to) {
-        return (totalCount(from, to) * 100d) / countAll();
+        int rangeCount = 0;
+        int count = 0;
+        for (int i = 0; i < table.capacity(); i++) {
+            int c = table.countAt(i);
+            count += c;
+            if (table.keyAt(i) != null && c >= from && c < to)
+                rangeCount += c;
+        }
+        return (rangeCount * 100d) / count;
+    }
+
+    /**
+     * saves the elements and their counts to a compact binary file. Elements are written with their
+     * toString() values. Saved file can be memory mapped with {@link MappedCountingSet#load(java.io.File)}
+     * for fast read only access.
+     *
+     * @param file file to write.
+     * @throws IOException              if an IO error occurs.
+     * @throws IllegalArgumentException if two elements have the same toString() value.
+     */
+    public void save(File file) throws IOException {
+        Object[] keys = new Object[table.size()];
+        int[] counts = new int[keys.length];
+        int j = 0;
+        for (int i = 0; i < table.capacity(); i++) {
+            T key = table.keyAt(i);
+            if (key != null) {
+                keys[j] = key;
+                counts[j++] = table.countAt(i);
+            }
+        }
+        MappedCountingSet.save(keys, counts, file);
+    }
+
+    /**
+     * writes the elements and their counts as "element[separator]count" lines to a UTF-8 file,
+     * sorted by count, descending. uses at most one million elements as sort buffer.
+     *
+     * @param file      file to write.
+     * @param separator separator between the element and count.
+     * @throws IOException if an IO error occurs.
+     * @see #writeSorted(java.io.File, String, int)
+     */
+    public void writeSorted(File file, String separator) throws IOException {
+        writeSorted(file, separator, DEFAULT_SORT_BUFFER_SIZE);
+    }
+
+    /**
+     * writes the elements and their counts as "element[separator]count" lines to a UTF-8 file,
+     * sorted by count, descending. Elements with equal counts are written in the same order as {@link #getSortedList()}.
+     * Lines are written directly to the writer, no lists or line strings are created. Elements are sorted in
+     * count ranges that contain at most sortBufferSize elements, so memory usage does not depend on the set size
+     * but the set is scanned once for each range. Elements with the same count never need sorting.
+     *
+     * @param file           file to write.
+     * @param separator      separator between the element and count.
+     * @param sortBufferSize maximum amount of elements sorted at once.
+     * @throws IOException if an IO error occurs.
+     */
+    public void writeSorted(File file, String separator, int sortBufferSize) throws IOException {
+        checkNotNull(file, "File cannot be null.");
+        checkNotNull(separator, "separator cannot be null.");
+        if (sortBufferSize < 1)
+            throw new IllegalArgumentException("Sort buffer size must be positive:" + sortBufferSize);
+        Statistics stats = statistics();
+        BufferedWriter writer = IOs.getBufferedWriter(new FileOutputStream(file), "utf-8");
+        try {
+            char[] digits = new char[10];
+            long[] packed = null;
+            int[] values = stats.values;
+            int[] itemPrefix = stats.itemPrefix;
+            int i = values.length - 1;
+            while (i >= 0) {
+                int rangeSize = itemPrefix[i + 1] - itemPrefix[i];
+                if (rangeSize > sortBufferSize) {
+                    // all elements have the same count, slot order is the sorted order.
+                    for (int slot = 0; slot < table.capacity(); slot++) {
+                        T key = table.keyAt(slot);
+                        if (key != null && table.countAt(slot) == values[i])
+                            writeEntry(writer, key, values[i], separator, digits);
+                    }
+                    i--;
+                    continue;
+                }
+                int j = i;
+                while (j > 0 && rangeSize + itemPrefix[j] - itemPrefix[j - 1] <= sortBufferSize) {
+                    rangeSize += itemPrefix[j] - itemPrefix[j - 1];
+                    j--;
+                }
+                if (packed == null)
+                    packed = new long[Math.min(sortBufferSize, table.size())];
+                int n = 0;
+                for (int slot = 0; slot < table.capacity(); slot++) {
+                    int c = table.countAt(slot);
+                    if (table.keyAt(slot) != null && c >= values[j] && c <= values[i])
+                        packed[n++] = ((long) (Integer.MAX_VALUE - c) << 32) | slot;
+                }
+                Arrays.sort(packed, 0, n);
+                for (int k = 0; k < n; k++) {
+                    int slot = (int) packed[k];
+                    writeEntry(writer, table.keyAt(slot), table.countAt(slot), separator, digits);
+                }
+                i = j - 1;
+            }
+            writer.close();
+        } finally {
+            IOs.closeSilently(writer);
+        }
+    }
+
+    /**
+     * writes the elements and their counts as "element[separator]count" lines to a UTF-8 file,
+     * sorted by the given comparator. uses at most one million elements as sort buffer.
+     *
+     * @param file       file to write.
+     * @param comparator comparator for the elements.
+     * @param separator  separator between the element and count.
+     * @throws IOException if an IO error occurs.
+     * @see #writeSorted(java.io.File, java.util.Comparator, String, int)
+     */
+    public void writeSorted(File file, Comparator<T> comparator, String separator) throws IOException {
+        writeSorted(file, comparator, separator, DEFAULT_SORT_BUFFER_SIZE);
+    }
+
+    /**
+     * writes the elements and their counts as "element[separator]count" lines to a UTF-8 file,
+     * sorted by the given comparator. If the set has more than sortBufferSize elements, slots of the elements are
+     * sorted in runs of sortBufferSize and runs are written to a temporary file as slot indexes. Runs are then
+     * merged while writing the lines. Elements themselves are never copied, so memory usage does not depend on
+     * the set size. Elements that are equal by the comparator are written in table order.
+     *
+     * @param file           file to write.
+     * @param comparator     comparator for the elements.
+     * @param separator      separator between the element and count.
+     * @param sortBufferSize maximum amount of elements sorted at once.
+     * @throws IOException if an IO error occurs.
+     */
+    public void writeSorted(File file, Comparator<T> comparator, String separator, int sortBufferSize)
+            throws IOException {
+        checkNotNull(file, "File cannot be null.");
+        checkNotNull(comparator, "comparator cannot be null.");
+        checkNotNull(separator, "separator cannot be null.");
+        if (sortBufferSize < 1)
+            throw new IllegalArgumentException("Sort buffer size must be positive:" + sortBufferSize);
+        SlotComparator slotComparator = new SlotComparator(comparator);
+        Integer[] run = new Integer[Math.min(sortBufferSize, table.size())];
+        BufferedWriter writer = IOs.getBufferedWriter(new FileOutputStream(file), "utf-8");
+        File runFile = null;
+        try {
+            char[] digits = new char[10];
+            if (table.size() <= sortBufferSize) {
+                int n = fillRun(run, 0);
+                Arrays.sort(run, 0, n, slotComparator);
+                for (int k = 0; k < n; k++) {
+                    writeEntry(writer, table.keyAt(run[k]), table.countAt(run[k]), separator, digits);
+                }
+            } else {
+                runFile = File.createTempFile("jcaki-sort", ".tmp");
+                List<Integer> runLengths = writeRuns(runFile, run, slotComparator);
+                mergeRuns(runFile, runLengths, slotComparator, writer, separator, digits);
+            }
+            writer.close();
+        } finally {
+            IOs.closeSilently(writer);
+            if (runFile != null)
+                runFile.delete();
+        }
+    }
+
+    // compares the elements in the table slots.
+    private class SlotComparator implements Comparator<Integer> {
+        final Comparator<T> comparator;
+
+        SlotComparator(Comparator<T> comparator) {
+            this.comparator = comparator;
+        }
+
+        public int compare(Integer slot1, Integer slot2) {
+            int c = comparator.compare(table.keyAt(slot1), table.keyAt(slot2));
+            return c != 0 ? c : slot1.compareTo(slot2);
+        }
+    }
+
+    // fills the run with the slots of the elements, starting from the slot. returns the amount of slots in the run.
+    private int fillRun(Integer[] run, int startSlot) {
+        int n = 0;
+        for (int slot = startSlot; slot < table.capacity() && n < run.length; slot++) {
+            if (table.keyAt(slot) != null)
+                run[n++] = slot;
+        }
+        return n;
+    }
+
+    // sorts the slots in runs and writes them to the file. returns the length of each run.
+    private List<Integer> writeRuns(File runFile, Integer[] run, SlotComparator comparator) throws IOException {
+        List<Integer> runLengths = new ArrayList<Integer>();
+        DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(runFile), IOs.CHAR_BUFFER_SIZE));
+        try {
+            int slot = 0;
+            while (true) {
+                int n = fillRun(run, slot);
+                if (n == 0)
+                    break;
+                slot = run[n - 1] + 1;
+                Arrays.sort(run, 0, n, comparator);
+                for (int k = 0; k < n; k++) {
+                    dos.writeInt(run[k]);
+                }
+                runLengths.add(n);
+            }
+            dos.close();
+        } finally {
+            IOs.closeSilently(dos);
+        }
+        return runLengths;
+    }
+
+    // a sorted run in the run file and its current slot.
+    private static class Run {
+        final DataInputStream input;
+        int remaining;
+        int slot;
+
+        Run(DataInputStream input, int remaining) {
+            this.input = input;
+            this.remaining = remaining;
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0)
+                return false;
+            remaining--;
+            slot = input.readInt();
+            return true;
+        }
+    }
+
+    private void mergeRuns(File runFile, List<Integer> runLengths, final SlotComparator comparator,
+                           Writer writer, String separator, char[] digits) throws IOException {
+        List<Run> runs = new ArrayList<Run>(runLengths.size());
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(runLengths.size(), new Comparator<Run>() {
+            public int compare(Run r1, Run r2) {
+                return comparator.compare(r1.slot, r2.slot);
+            }
+        });
+        try {
+            long offset = 0;
+            for (int length : runLengths) {
+                FileInputStream fis = new FileInputStream(runFile);
+                Run run = new Run(new DataInputStream(new BufferedInputStream(fis, 1 << 13)), length);
+                runs.add(run);
+                fis.getChannel().position(offset);
+                offset += length * 4L;
+                if (run.next())
+                    queue.add(run);
+            }
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                writeEntry(writer, table.keyAt(run.slot), table.countAt(run.slot), separator, digits);
+                if (run.next())
+                    queue.add(run);
+            }
+        } finally {
+            for (Run run : runs) {
+                IOs.closeSilently(run.input);
+            }
+        }
+    }
+
+    private static void writeEntry(Writer writer, Object key, int count, String separator, char[] digits)
+            throws IOException {
+        writer.write(key.toString());
+        writer.write(separator);
+        int p = digits.length;
+        do {
+            digits[--p] = (char) ('0' + count % 10);
+            count /= 10;
+        } while (count > 0);
+        writer.write(digits, p, digits.length - p);
+        writer.write(IOs.LINE_SEPARATOR);
+    }
+
+    /**
+     * calculates a snapshot of the count statistics of this set in a single pass. if several of the
+     * min, max, total, size or range queries are required, it is cheaper to call them on the snapshot
+     * than calling the methods of this class, because each of those methods scans the whole set.
+     * Later changes to the set are not reflected to the snapshot.
+     *
+     * @return count statistics of the current set.
+     */
+    public Statistics statistics() {
+        return new Statistics(table);
     }
 
     /**
@@ -377,11 +944,18 @@ public class CountingSet<T> implements Iterable<T> {
      * @return Elements in a list sorted by count, descending..
      */
     public List<T> getSortedList() {
-        List<Map.Entry<T, Integer>> l = new ArrayList<Map.Entry<T, Integer>>(map.entrySet());
-        Collections.sort(l, new CountComparator());
-        List<T> list = new ArrayList<T>();
-        for (Map.Entry<T, Integer> entry : l) {
-            list.add(entry.getKey());
+        // each element is packed to a long as [Integer.MAX_VALUE - count | slot index] so that sorting
+        // the primitive array orders the elements by count, descending.
+        long[] packed = new long[table.size()];
+        int j = 0;
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.keyAt(i) != null)
+                packed[j++] = ((long) (Integer.MAX_VALUE - table.countAt(i)) << 32) | i;
+        }
+        Arrays.sort(packed);
+        List<T> list = new ArrayList<T>(packed.length);
+        for (long p : packed) {
+            list.add(table.keyAt((int) p));
         }
         return list;
     }
@@ -404,7 +978,7 @@ public class CountingSet<T> implements Iterable<T> {
      * @return a set containing the elements.
      */
     public Set<T> getSet() {
-        return map.keySet();
+        return table.keySet();
     }
 
 
@@ -414,7 +988,7 @@ public class CountingSet<T> implements Iterable<T> {
      * @return returns an iterator for elements.
      */
     public Iterator<T> iterator() {
-        return map.keySet().iterator();
+        return table.keySet().iterator();
     }
 
     /**
@@ -424,15 +998,210 @@ public class CountingSet<T> implements Iterable<T> {
      */
     public int countAll() {
         int count = 0;
-        for (T t : getSet()) {
-            count += map.get(t);
+        for (int i = 0; i < table.capacity(); i++) {
+            count += table.countAt(i);
         }
         return count;
     }
 
-    private class CountComparator implements Comparator<Map.Entry<T, Integer>> {
-        public int compare(Map.Entry<T, Integer> o1, Map.Entry<T, Integer> o2) {
-            return (o2.getValue() < o1.getValue()) ? -1 : ((o2.getValue() > o1.getValue()) ? 1 : 0);
+    /**
+     * An immutable snapshot of the count distribution of a CountingSet. it keeps the distinct count values
+     * and the amount of items having each value (count of counts). Range queries are answered with binary search over
+     * cumulative sums of this histogram.
+     */
+    public static final class Statistics {
+
+        // counts smaller than this are accumulated in a direct indexed array during the scan.
+        private static final int DENSE_LIMIT = 1 << 16;
+
+        private final int min;
+        private final int max;
+        private final int size;
+        private final long total;
+        // distinct count values, ascending.
+        private final int[] values;
+        // itemPrefix[i] = amount of items whose count is smaller than values[i]. has one extra slot for all items.
+        private final int[] itemPrefix;
+        // totalPrefix[i] = sum of counts smaller than values[i]. has one extra slot for the total.
+        private final long[] totalPrefix;
+
+        private Statistics(CountTable<?> table) {
+            int[] dense = new int[DENSE_LIMIT];
+            int[] large = new int[16];
+            int largeSize = 0;
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            long total = 0;
+            for (int i = 0; i < table.capacity(); i++) {
+                if (table.keyAt(i) == null)
+                    continue;
+                int c = table.countAt(i);
+                if (c < min)
+                    min = c;
+                if (c > max)
+                    max = c;
+                total += c;
+                if (c < DENSE_LIMIT) {
+                    dense[c]++;
+                } else {
+                    if (largeSize == large.length) {
+                        int[] grown = new int[largeSize * 2];
+                        System.arraycopy(large, 0, grown, 0, largeSize);
+                        large = grown;
+                    }
+                    large[largeSize++] = c;
+                }
+            }
+            this.min = min;
+            this.max = max;
+            this.total = total;
+            this.size = table.size();
+
+            Arrays.sort(large, 0, largeSize);
+            int distinct = 0;
+            for (int f : dense) {
+                if (f > 0)
+                    distinct++;
+            }
+            for (int i = 0; i < largeSize; i++) {
+                if (i == 0 || large[i] != large[i - 1])
+                    distinct++;
+            }
+            values = new int[distinct];
+            itemPrefix = new int[distinct + 1];
+            totalPrefix = new long[distinct + 1];
+            int k = 0;
+            for (int c = 0; c < dense.length; c++) {
+                if (dense[c] > 0) {
+                    values[k] = c;
+                    itemPrefix[k + 1] = itemPrefix[k] + dense[c];
+                    totalPrefix[k + 1] = totalPrefix[k] + (long) c * dense[c];
+                    k++;
+                }
+            }
+            for (int i = 0; i < largeSize; i++) {
+                if (i == 0 || large[i] != large[i - 1]) {
+                    values[k] = large[i];
+                    itemPrefix[k + 1] = itemPrefix[k];
+                    totalPrefix[k + 1] = totalPrefix[k];
+                    k++;
+                }
+                itemPrefix[k]++;
+                totalPrefix[k] += large[i];
+            }
+        }
+
+        // index of the first distinct value that is equal or larger than the given value.
+        private int lowerBound(long value) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] < value)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+
+        /**
+         * @return the min value, if set is empty, Integer.MAX_VALUE is returned.
+         */
+        public int minValue() {
+            return min;
+        }
+
+        /**
+         * @return the max value, if set is empty, 0 is returned.
+         */
+        public int maxValue() {
+            return max;
+        }
+
+        /**
+         * @return amount of distinct elements.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return sum of all item's counts.
+         */
+        public long countAll() {
+            return total;
+        }
+
+        /**
+         * @param amount amount to check
+         * @return amount of items whose count is smaller than amount
+         */
+        public int sizeSmaller(int amount) {
+            return itemPrefix[lowerBound(amount)];
+        }
+
+        /**
+         * @param amount amount to check
+         * @return amount of items whose count is larger than amount
+         */
+        public int sizeLarger(int amount) {
+            return size - itemPrefix[lowerBound((long) amount + 1)];
+        }
+
+        /**
+         * @param value count value
+         * @return amount of items whose count is equal to value.
+         */
+        public int sizeOf(int value) {
+            return sizeBetween(value, (long) value + 1);
+        }
+
+        /**
+         * @param from from
+         * @param to   to
+         * @return amount of items whose count is between "from" and "to" ("to" exclusive)
+         */
+        public int sizeBetween(int from, int to) {
+            return sizeBetween(from, (long) to);
+        }
+
+        private int sizeBetween(int from, long to) {
+            if (to <= from)
+                return 0;
+            return itemPrefix[lowerBound(to)] - itemPrefix[lowerBound(from)];
+        }
+
+        /**
+         * @param from from
+         * @param to   to
+         * @return total count of items whose count is between "from" and "to" ("to" exclusive)
+         */
+        public long totalCount(int from, int to) {
+            if (to <= from)
+                return 0;
+            return totalPrefix[lowerBound(to)] - totalPrefix[lowerBound(from)];
+        }
+
+        /**
+         * @param from from
+         * @param to   to
+         * @return percentage of the total count of items whose count is between "from" and "to" ("to" exclusive)
+         */
+        public double countPercent(int from, int to) {
+            return (totalCount(from, to) * 100d) / total;
+        }
+
+        /**
+         * @return a SortedMap of count values and amount of items having that count.
+         * @see CountingSet#sortedCountMap()
+         */
+        public SortedMap<Integer, Integer> sortedCountMap() {
+            SortedMap<Integer, Integer> result = new TreeMap<Integer, Integer>();
+            for (int i = 0; i < values.length; i++) {
+                result.put(values[i], itemPrefix[i + 1] - itemPrefix[i]);
+            }
+            return result;
         }
     }
 }
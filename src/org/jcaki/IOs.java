@@ -413,12 +413,16 @@ public class IOs {
         checkNotNull(is, "input stream cannot be null.");
         PushbackInputStream pis = new PushbackInputStream(is, bomBytes.length);
         byte[] bomRead = new byte[bomBytes.length];
-        if (pis.read(bomRead, 0, bomBytes.length) == -1) {
-            return is;
-        }
-        if (!Arrays.equals(bomRead, bomBytes)) {
-            pis.unread(bomRead);
+        int read = 0;
+        while (read < bomRead.length) {
+            int n = pis.read(bomRead, read, bomRead.length - read);
+            if (n == -1)
+                break;
+            read += n;
         }
+        // only the bytes that are actually read are pushed back, stream may be shorter than the BOM.
+        if (read < bomRead.length || !Arrays.equals(bomRead, bomBytes))
+            pis.unread(bomRead, 0, read);
         return pis;
     }
 
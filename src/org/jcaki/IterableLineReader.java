@@ -31,8 +31,7 @@ import java.util.Iterator;
 public class IterableLineReader implements Iterable<String>, Closeable {
 
     private final BufferedReader bufferedReader;
-    private boolean trim;
-    private Filter filters[] = new Filter[0];
+    private LineFilter lineFilter = LineFilter.PASS_ALL;
 
     public IterableLineReader(Reader reader) {
         if (reader instanceof BufferedReader)
@@ -47,9 +46,12 @@ public class IterableLineReader implements Iterable<String>, Closeable {
             this.bufferedReader = (BufferedReader) reader;
         else
             this.bufferedReader = new BufferedReader(reader);
-        this.filters = filters;
-        this.trim = trim;
+        this.lineFilter = LineFilter.of(trim, filters);
+    }
 
+    IterableLineReader(Reader reader, LineFilter lineFilter) {
+        this(reader);
+        this.lineFilter = lineFilter;
     }
 
     public void close() {
@@ -57,6 +59,6 @@ public class IterableLineReader implements Iterable<String>, Closeable {
     }
 
     public Iterator<String> iterator() {
-        return new LineIterator(bufferedReader, trim, filters);
+        return new LineIterator(bufferedReader, lineFilter);
     }
 }
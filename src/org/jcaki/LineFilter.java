@@ -0,0 +1,122 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import static org.jcaki.Preconditions.checkArgument;
+
+import java.util.regex.Pattern;
+
+/**
+ * Trims and filters the lines read by the line readers in a single step.
+ * {@link #apply(String)} returns the line to be read, or null if the line should be skipped.
+ */
+abstract class LineFilter {
+
+    static final LineFilter PASS_ALL = new LineFilter() {
+        String apply(String line) {
+            return line;
+        }
+    };
+
+    /**
+     * @param line a line
+     * @return the line after trimming if it passes the filters. null if it does not pass.
+     */
+    abstract String apply(String line);
+
+    /**
+     * creates a LineFilter that trims the line if necessary, and checks the filters one by one.
+     *
+     * @param trim    trims the lines if true.
+     * @param filters filters to apply after trimming.
+     * @return a LineFilter.
+     */
+    static LineFilter of(final boolean trim, Filter... filters) {
+        if (filters == null)
+            filters = new Filter[0];
+        if (!trim && filters.length == 0)
+            return PASS_ALL;
+        final Filter[] f = filters;
+        return new LineFilter() {
+            String apply(String line) {
+                if (trim)
+                    line = line.trim();
+                return f.length == 0 || StringFilters.canPassAll(line, f) ? line : null;
+            }
+        };
+    }
+
+    /**
+     * compiles the line reading constraints to a single filter. Checks are made from the cheapest to the most
+     * expensive: whitespace lines, prefixes (with a single pass over a prefix trie) and regular expression. Trimming is done with index arithmetic,
+     * a trimmed String is created only for the lines that pass the filters.
+     *
+     * @param trim                  trims the lines if true.
+     * @param ignoreWhiteSpaceLines skips empty or whitespace only lines if true.
+     * @param ignorePrefixes        skips the lines starting with one of these. may be null.
+     * @param regexp                only the lines that contain a match of this are read. may be null.
+     * @return a LineFilter.
+     * @throws IllegalArgumentException if regexp is empty.
+     */
+    static LineFilter compile(boolean trim, boolean ignoreWhiteSpaceLines, String[] ignorePrefixes, String regexp) {
+        if (!trim && !ignoreWhiteSpaceLines && ignorePrefixes == null && regexp == null)
+            return PASS_ALL;
+        checkArgument(regexp == null || regexp.length() > 0, "regexp String cannot be empty");
+        return new CompiledLineFilter(trim, ignoreWhiteSpaceLines, ignorePrefixes,
+                regexp == null ? null : Pattern.compile(regexp));
+    }
+
+    private static class CompiledLineFilter extends LineFilter {
+        final boolean trim;
+        final boolean ignoreWhiteSpaceLines;
+        final PrefixTrie prefixes;
+        final Pattern pattern;
+
+        CompiledLineFilter(boolean trim, boolean ignoreWhiteSpaceLines, String[] ignorePrefixes, Pattern pattern) {
+            this.trim = trim;
+            this.ignoreWhiteSpaceLines = ignoreWhiteSpaceLines;
+            this.prefixes = ignorePrefixes == null ? null : new PrefixTrie(ignorePrefixes);
+            this.pattern = pattern;
+        }
+
+        String apply(String line) {
+            int length = line.length();
+            int start = 0;
+            int end = length;
+            if (trim || ignoreWhiteSpaceLines) {
+                // same as String.trim()
+                while (start < end && line.charAt(start) <= ' ')
+                    start++;
+                while (end > start && line.charAt(end - 1) <= ' ')
+                    end--;
+                if (ignoreWhiteSpaceLines && start == end)
+                    return null;
+            }
+            if (!trim) {
+                start = 0;
+                end = length;
+            }
+            if (prefixes != null && prefixes.matches(line, start, end))
+                return null;
+            // a region behaves like a substring for the anchors and look arounds with default matcher settings.
+            if (pattern != null && !pattern.matcher(line).region(start, end).find())
+                return null;
+            return start == 0 && end == length ? line : line.substring(start, end);
+        }
+    }
+}
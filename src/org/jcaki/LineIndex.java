@@ -0,0 +1,289 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import static org.jcaki.Preconditions.checkNotNull;
+
+import java.io.*;
+
+/**
+ * Byte offsets of the line starts of a text file, for reading lines from the middle of a file without reading
+ * the lines before them. Index is built with a single byte level pass, so it can only be used with ascii
+ * compatible encodings (see {@link ByteLineScanner#isAsciiCompatible(java.nio.charset.Charset)}). Lines are
+ * counted the same way as {@link BufferedReader#readLine()}. A UTF-8 BOM is counted as a part of the first line.
+ * <p/>
+ * Offset of every k-th line is kept, where k is the interval of the index. With interval 1 a line can be found
+ * directly, with larger intervals at most k-1 lines are skipped while memory use is divided by k.
+ * <p/>
+ * An index can be saved to a sidecar file next to the text file, see {@link #forFile(java.io.File, int)}.
+ * Sidecar file format (big endian):
+ * <pre>
+ * int    magic
+ * int    version
+ * long   length of the text file
+ * long   last modification time of the text file
+ * int    interval
+ * long   line count
+ * int    offset count (n)
+ * n      offsets, each one as a varint difference from the previous offset.
+ * </pre>
+ */
+public final class LineIndex {
+
+    private static final int MAGIC = 0x4A4C4958;
+    private static final int VERSION = 1;
+    public static final String SIDECAR_EXTENSION = ".lidx";
+    /**
+     * interval used by {@link SimpleTextReader#readLines(long, long)} if it is not set.
+     */
+    public static final int DEFAULT_INTERVAL = 16;
+
+    private final long fileLength;
+    private final long lastModified;
+    private final int interval;
+    private final long lineCount;
+    private final long[] offsets;
+
+    private LineIndex(long fileLength, long lastModified, int interval, long lineCount, long[] offsets) {
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.interval = interval;
+        this.lineCount = lineCount;
+        this.offsets = offsets;
+    }
+
+    /**
+     * builds an index containing the offset of every line.
+     *
+     * @param file text file.
+     * @return a new LineIndex
+     * @throws IOException if an IO error occurs.
+     */
+    public static LineIndex build(File file) throws IOException {
+        return build(file, 1);
+    }
+
+    /**
+     * builds an index containing the offset of every interval-th line.
+     *
+     * @param file     text file.
+     * @param interval index interval.
+     * @return a new LineIndex
+     * @throws IOException if an IO error occurs.
+     */
+    public static LineIndex build(File file, int interval) throws IOException {
+        checkNotNull(file, "File cannot be null.");
+        if (interval < 1)
+            throw new IllegalArgumentException("Interval must be positive:" + interval);
+        long lastModified = file.lastModified();
+        ByteLineScanner scanner = new ByteLineScanner(file);
+        long[] offsets = new long[16];
+        int count = 0;
+        try {
+            while (scanner.next()) {
+                if ((scanner.lineCount() - 1) % interval != 0)
+                    continue;
+                if (count == offsets.length) {
+                    if (count == Integer.MAX_VALUE)
+                        throw new IllegalStateException("Too many lines for the index. Use a larger interval.");
+                    long[] grown = new long[(int) Math.min(Integer.MAX_VALUE, count * 2L)];
+                    System.arraycopy(offsets, 0, grown, 0, count);
+                    offsets = grown;
+                }
+                offsets[count++] = scanner.lineOffset();
+            }
+        } finally {
+            scanner.close();
+        }
+        long[] trimmed = new long[count];
+        System.arraycopy(offsets, 0, trimmed, 0, count);
+        return new LineIndex(file.length(), lastModified, interval, scanner.lineCount(), trimmed);
+    }
+
+    /**
+     * returns the index of the file from its sidecar file if the sidecar is up to date and has the same
+     * interval. Otherwise the index is built and saved to the sidecar file. if sidecar cannot be written
+     * (for example in a read only directory) index is still returned.
+     *
+     * @param file     text file.
+     * @param interval index interval.
+     * @return LineIndex of the file.
+     * @throws IOException if text file cannot be read.
+     */
+    public static LineIndex forFile(File file, int interval) throws IOException {
+        File sidecar = sidecarFile(file);
+        if (sidecar.exists()) {
+            try {
+                LineIndex index = load(sidecar);
+                if (index.interval == interval && index.isValidFor(file))
+                    return index;
+            } catch (IOException e) {
+                // broken sidecar, it is rebuilt.
+            }
+        }
+        LineIndex index = build(file, interval);
+        try {
+            index.save(sidecar);
+        } catch (IOException e) {
+            // index can still be used from memory.
+        }
+        return index;
+    }
+
+    /**
+     * @param file a text file.
+     * @return the sidecar index file for the file, in the same directory with {@link #SIDECAR_EXTENSION} added.
+     */
+    public static File sidecarFile(File file) {
+        checkNotNull(file, "File cannot be null.");
+        return new File(file.getPath() + SIDECAR_EXTENSION);
+    }
+
+    /**
+     * checks if this index was built from the current content of the file, by comparing the length and the
+     * modification time of the file.
+     *
+     * @param file text file.
+     * @return true if index can be used for the file.
+     */
+    public boolean isValidFor(File file) {
+        return file.length() == fileLength && file.lastModified() == lastModified;
+    }
+
+    /**
+     * @return amount of lines in the file.
+     */
+    public long lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return index interval.
+     */
+    public int interval() {
+        return interval;
+    }
+
+    /**
+     * @param line line number, starting from 0.
+     * @return the largest indexed line number that is not larger than line.
+     */
+    public long indexedLineBefore(long line) {
+        checkLine(line);
+        return line - line % interval;
+    }
+
+    /**
+     * @param line line number, starting from 0.
+     * @return byte offset of the line returned by {@link #indexedLineBefore(long)}.
+     */
+    public long offsetBefore(long line) {
+        checkLine(line);
+        return offsets[(int) (line / interval)];
+    }
+
+    private void checkLine(long line) {
+        if (line < 0 || line >= lineCount)
+            throw new IndexOutOfBoundsException("Line:" + line + " Line count:" + lineCount);
+    }
+
+    /**
+     * saves the index.
+     *
+     * @param indexFile file to write.
+     * @throws IOException if an IO error occurs.
+     */
+    public void save(File indexFile) throws IOException {
+        checkNotNull(indexFile, "File cannot be null.");
+        DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(indexFile), IOs.CHAR_BUFFER_SIZE));
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(fileLength);
+            dos.writeLong(lastModified);
+            dos.writeInt(interval);
+            dos.writeLong(lineCount);
+            dos.writeInt(offsets.length);
+            long previous = 0;
+            for (long offset : offsets) {
+                writeVarLong(dos, offset - previous);
+                previous = offset;
+            }
+            dos.close();
+        } finally {
+            IOs.closeSilently(dos);
+        }
+    }
+
+    /**
+     * loads an index saved with {@link #save(java.io.File)}
+     *
+     * @param indexFile index file.
+     * @return the LineIndex.
+     * @throws IOException if file cannot be read or it is not an index file.
+     */
+    public static LineIndex load(File indexFile) throws IOException {
+        checkNotNull(indexFile, "File cannot be null.");
+        DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile), IOs.CHAR_BUFFER_SIZE));
+        try {
+            if (dis.readInt() != MAGIC)
+                throw new IOException("Not a line index file:" + indexFile);
+            int version = dis.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported line index version:" + version);
+            long fileLength = dis.readLong();
+            long lastModified = dis.readLong();
+            int interval = dis.readInt();
+            long lineCount = dis.readLong();
+            int count = dis.readInt();
+            if (interval < 1 || count < 0 || count != (lineCount + interval - 1) / interval)
+                throw new IOException("Corrupt line index file:" + indexFile);
+            long[] offsets = new long[count];
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += readVarLong(dis);
+                offsets[i] = previous;
+            }
+            return new LineIndex(fileLength, lastModified, interval, lineCount, offsets);
+        } finally {
+            IOs.closeSilently(dis);
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream dos, long l) throws IOException {
+        while ((l & ~0x7fL) != 0) {
+            dos.write((int) ((l & 0x7f) | 0x80));
+            l >>>= 7;
+        }
+        dos.write((int) l);
+    }
+
+    private static long readVarLong(DataInputStream dis) throws IOException {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = dis.readByte();
+            result |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return result;
+    }
+}
@@ -22,6 +22,7 @@ package org.jcaki;
 
 import java.io.*;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -58,9 +59,7 @@ public class LineIterator implements Iterator<String>, Closeable {
      */
     private boolean finished = false;
 
-    private boolean trim = false;
-
-    private Filter filters[] = new Filter[0];
+    private LineFilter lineFilter = LineFilter.PASS_ALL;
 
     public LineIterator(InputStream is) {
         Preconditions.checkNotNull(is, "InputStream cannot be null!");
@@ -81,9 +80,13 @@ public class LineIterator implements Iterator<String>, Closeable {
             this.bufferedReader = (BufferedReader) reader;
         } else
             this.bufferedReader = new BufferedReader(reader);
-        if (filters != null && filters.length > 0)
-            this.filters = filters;
-        this.trim = trim;
+        this.lineFilter = LineFilter.of(trim, filters);
+    }
+
+    LineIterator(Reader reader, LineFilter lineFilter) {
+        this(reader);
+        Preconditions.checkNotNull(lineFilter, "Line filter cannot be null!");
+        this.lineFilter = lineFilter;
     }
 
     public boolean hasNext() {
@@ -93,29 +96,84 @@ public class LineIterator implements Iterator<String>, Closeable {
             close();
             return false;
         } else {
-            try {
-                String line;
-                do {
-                    line = bufferedReader.readLine();
-                    if (line != null && trim) {
-                        line = line.trim();
-                    }
-                }
-                while (line != null && filters.length > 0 && !StringFilters.canPassAll(line, filters));
-
-                if (line == null) {
-                    finished = true;
-                    close();
-                    return false;
-                } else {
-                    cachedLine = line;
-                    return true;
-                }
-            } catch (IOException ioe) {
+            cachedLine = readLine();
+            return cachedLine != null;
+        }
+    }
+
+    /**
+     * reads the next line that passes the filters.
+     *
+     * @return next line, or null if there are no more lines. reader is closed when the end is reached.
+     */
+    private String readLine() {
+        try {
+            String line;
+            do {
+                line = bufferedReader.readLine();
+                if (line == null)
+                    break;
+                line = lineFilter.apply(line);
+            }
+            while (line == null);
+
+            if (line == null) {
+                finished = true;
                 close();
-                throw new IllegalStateException(ioe.toString());
             }
+            return line;
+        } catch (IOException ioe) {
+            close();
+            throw new IllegalStateException(ioe.toString());
+        }
+    }
+
+    /**
+     * reads up to dest.length lines to the beginning of the dest array. This avoids calling hasNext() and next()
+     * for every line.
+     *
+     * @param dest array to fill with lines.
+     * @return amount of lines written to dest. 0 if there are no more lines.
+     */
+    public int nextBatch(String[] dest) {
+        Preconditions.checkNotNull(dest, "Destination array cannot be null!");
+        int n = 0;
+        if (n < dest.length && cachedLine != null) {
+            dest[n++] = cachedLine;
+            cachedLine = null;
+        }
+        while (n < dest.length && !finished) {
+            String line = readLine();
+            if (line == null)
+                break;
+            dest[n++] = line;
+        }
+        return n;
+    }
+
+    /**
+     * adds up to maxLines lines to the dest list.
+     *
+     * @param dest     list to add the lines.
+     * @param maxLines maximum amount of lines to add.
+     * @return amount of lines added to dest. 0 if there are no more lines.
+     */
+    public int nextBatch(List<String> dest, int maxLines) {
+        Preconditions.checkNotNull(dest, "Destination list cannot be null!");
+        int n = 0;
+        if (n < maxLines && cachedLine != null) {
+            dest.add(cachedLine);
+            cachedLine = null;
+            n++;
+        }
+        while (n < maxLines && !finished) {
+            String line = readLine();
+            if (line == null)
+                break;
+            dest.add(line);
+            n++;
         }
+        return n;
     }
 
     public String next() {
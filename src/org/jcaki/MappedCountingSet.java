@@ -0,0 +1,375 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import static org.jcaki.Preconditions.checkNotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A read only, memory mapped view of a CountingSet saved with {@link CountingSet#save(java.io.File)}.
+ * Loading only maps the file, no elements are created on the heap. {@link #getCount(String)} makes a binary search
+ * over the sorted keys in the mapped file. Only the header and the offset index are checked while loading, a
+ * corrupt record is detected when it is read and an IllegalStateException is thrown.
+ * <p/>
+ * File format (big endian):
+ * <pre>
+ * int    magic
+ * int    version
+ * int    element count (n)
+ * long   sum of counts
+ * int[n] offset index. offsets of the records relative to the start of the record area.
+ * records, sorted by the unsigned UTF-8 bytes of the keys. each record is
+ *        [varint key byte length][UTF-8 key bytes][varint count]
+ * </pre>
+ * Files can be at most 2GB.
+ */
+public final class MappedCountingSet implements Iterable<String> {
+
+    private static final int MAGIC = 0x4A435331;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final long total;
+    private final int recordStart;
+
+    private MappedCountingSet(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a CountingSet file.");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported CountingSet file version:" + buffer.getInt(4));
+        this.size = buffer.getInt(8);
+        this.total = buffer.getLong(12);
+        int limit = buffer.capacity();
+        if (size < 0 || HEADER_SIZE + size * 4L > limit)
+            throw new IOException("Corrupt CountingSet file. Element count:" + size + " File size:" + limit);
+        this.recordStart = HEADER_SIZE + size * 4;
+    }
+
+    /**
+     * memory maps a file written by {@link CountingSet#save(java.io.File)}.
+     *
+     * @param file file to load.
+     * @return a MappedCountingSet backed by the file.
+     * @throws IOException if file cannot be read or it is not a CountingSet file.
+     */
+    public static MappedCountingSet load(File file) throws IOException {
+        checkNotNull(file, "File cannot be null.");
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("File is too large to map:" + file);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedCountingSet(buffer);
+        } finally {
+            IOs.closeSilently(raf);
+        }
+    }
+
+    /**
+     * count of the given element
+     *
+     * @param s element
+     * @return count of the element. if element does not exist, 0
+     */
+    public int getCount(String s) {
+        int index = indexOf(s);
+        return index < 0 ? 0 : countAt(index);
+    }
+
+    /**
+     * if element exist.
+     *
+     * @param s element.
+     * @return if element exists.
+     */
+    public boolean contains(String s) {
+        return indexOf(s) >= 0;
+    }
+
+    /**
+     * @return amount of elements.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return sum of all item's counts.
+     */
+    public long countAll() {
+        return total;
+    }
+
+    /**
+     * @param index element index. elements are sorted by their UTF-8 bytes.
+     * @return element in the given index.
+     */
+    public String keyAt(int index) {
+        checkIndex(index);
+        int p = recordAt(index);
+        int length = readVarInt(p);
+        p = keyStart(p, length);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(p + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    /**
+     * @param index element index. elements are sorted by their UTF-8 bytes.
+     * @return count of the element in the given index.
+     */
+    public int countAt(int index) {
+        checkIndex(index);
+        int p = recordAt(index);
+        int length = readVarInt(p);
+        return readVarInt(keyStart(p, length) + length);
+    }
+
+    /**
+     * copies the elements to a new CountingSet.
+     *
+     * @return a new CountingSet
+     */
+    public CountingSet<String> toCountingSet() {
+        CountingSet<String> set = new CountingSet<String>(size);
+        for (int i = 0; i < size; i++) {
+            set.add(keyAt(i), countAt(i));
+        }
+        return set;
+    }
+
+    /**
+     * @return an iterator for the elements, in the order of their UTF-8 bytes.
+     */
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            int index = 0;
+
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            public String next() {
+                if (index >= size)
+                    throw new NoSuchElementException();
+                return keyAt(index++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("MappedCountingSet is read only.");
+            }
+        };
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index:" + index + " Size:" + size);
+    }
+
+    private int indexOf(String s) {
+        if (s == null)
+            return -1;
+        byte[] key = utf8(s);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compareWith(mid, key);
+            if (c < 0)
+                low = mid + 1;
+            else if (c > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    // compares the key in the index with the given key.
+    private int compareWith(int index, byte[] key) {
+        int p = recordAt(index);
+        int length = readVarInt(p);
+        p = keyStart(p, length);
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = (buffer.get(p + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0)
+                return c;
+        }
+        return length - key.length;
+    }
+
+    // returns the position of the record in the index. records are checked while they are read, so loading does
+    // not touch them.
+    private int recordAt(int index) {
+        int offset = buffer.getInt(HEADER_SIZE + index * 4);
+        if (offset < 0 || offset >= buffer.capacity() - recordStart)
+            throw corrupt("Record " + index + " offset:" + offset);
+        return recordStart + offset;
+    }
+
+    // returns the position of the key bytes of the record in p, if a key with the length fits to the buffer.
+    private int keyStart(int p, int length) {
+        if (length < 0)
+            throw corrupt("Key length:" + length + " at:" + p);
+        int keyStart = p + varIntSize(length);
+        if (length > buffer.capacity() - keyStart)
+            throw corrupt("Key length:" + length + " at:" + p);
+        return keyStart;
+    }
+
+    private int readVarInt(int p) {
+        int result = 0;
+        for (int i = 0; i < 5 && p + i < buffer.capacity(); i++) {
+            byte b = buffer.get(p + i);
+            result |= (b & 0x7f) << (7 * i);
+            if (b >= 0)
+                return result;
+        }
+        throw corrupt("Invalid varint at:" + p);
+    }
+
+    private static IllegalStateException corrupt(String message) {
+        return new IllegalStateException("Corrupt CountingSet file. " + message);
+    }
+
+    private static int varIntSize(int i) {
+        int size = 1;
+        while ((i & ~0x7f) != 0) {
+            i >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarInt(DataOutputStream dos, int i) throws IOException {
+        while ((i & ~0x7f) != 0) {
+            dos.write((i & 0x7f) | 0x80);
+            i >>>= 7;
+        }
+        dos.write(i);
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    private static class Record {
+        final byte[] key;
+        final int count;
+
+        Record(byte[] key, int count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+
+    private static final Comparator<Record> UNSIGNED_BYTE_ORDER = new Comparator<Record>() {
+        public int compare(Record r1, Record r2) {
+            int n = Math.min(r1.key.length, r2.key.length);
+            for (int i = 0; i < n; i++) {
+                int c = (r1.key[i] & 0xff) - (r2.key[i] & 0xff);
+                if (c != 0)
+                    return c;
+            }
+            return r1.key.length - r2.key.length;
+        }
+    };
+
+    /**
+     * writes the elements and counts to the file. elements are written with their toString() values.
+     *
+     * @param keys   elements.
+     * @param counts counts of the elements.
+     * @param file   file to write.
+     * @throws IOException              if an IO error occurs.
+     * @throws IllegalArgumentException if two elements have the same string value.
+     */
+    static void save(Object[] keys, int[] counts, File file) throws IOException {
+        checkNotNull(file, "File cannot be null.");
+        Record[] records = new Record[keys.length];
+        long total = 0;
+        for (int i = 0; i < keys.length; i++) {
+            records[i] = new Record(utf8(keys[i].toString()), counts[i]);
+            total += counts[i];
+        }
+        Arrays.sort(records, UNSIGNED_BYTE_ORDER);
+
+        long recordSize = 0;
+        for (int j = 0; j < records.length; j++) {
+            if (j > 0 && UNSIGNED_BYTE_ORDER.compare(records[j - 1], records[j]) == 0)
+                throw new IllegalArgumentException("Duplicate element string:" + key(records[j]));
+            Record r = records[j];
+            recordSize += varIntSize(r.key.length) + r.key.length + varIntSize(r.count);
+        }
+        if (HEADER_SIZE + records.length * 4L + recordSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("CountingSet is too large to save. It requires more than 2GB.");
+
+        DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), IOs.CHAR_BUFFER_SIZE));
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(records.length);
+            dos.writeLong(total);
+            int offset = 0;
+            for (Record r : records) {
+                dos.writeInt(offset);
+                offset += varIntSize(r.key.length) + r.key.length + varIntSize(r.count);
+            }
+            for (Record r : records) {
+                writeVarInt(dos, r.key.length);
+                dos.write(r.key);
+                writeVarInt(dos, r.count);
+            }
+            dos.close();
+        } finally {
+            IOs.closeSilently(dos);
+        }
+    }
+
+    private static String key(Record r) {
+        try {
+            return new String(r.key, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+}
@@ -1,19 +1,47 @@
 package org.jcaki;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
-public class MultiFileLineIterator implements Iterator<String> {
+/**
+ * Iterates over the lines of multiple files, in the order of the files.
+ * <p/>
+ * In prefetch mode (see {@link #MultiFileLineIterator(SimpleTextReader.Template, java.util.List, int)}) next files
+ * are opened and read by background threads into bounded line queues, so iteration does not wait for opening
+ * and first reads of the files. Iterator should be closed with {@link #close()} if it is not read to the end.
+ * <p/>
+ * If a file cannot be read, hasNext() throws an IllegalStateException with the cause of the error.
+ */
+public class MultiFileLineIterator implements Iterator<String>, Closeable {
+
+    private static final int PREFETCH_CHUNK_SIZE = 256;
+    private static final int PREFETCH_QUEUE_SIZE = 16;
+    private static final String[] END = new String[0];
 
     private int fileCursor = 0;
     private LineIterator currentIterator;
     private final List<File> files;
     private SimpleTextReader.Template template = new SimpleTextReader.Template();
 
+    // prefetch mode state.
+    private ExecutorService executor;
+    private final LinkedList<FilePrefetcher> prefetchers = new LinkedList<FilePrefetcher>();
+    private FilePrefetcher current;
+    private String[] chunk = END;
+    private int chunkIndex;
+
     public MultiFileLineIterator(File... files) throws IOException {
         this.files = new ArrayList<File>(Arrays.asList(files));
         currentIterator = template.generateReader(files[0]).getLineIterator();
@@ -36,26 +64,158 @@ public class MultiFileLineIterator implements Iterator<String> {
         currentIterator = template.generateReader(files.get(0)).getLineIterator();
     }
 
+    /**
+     * creates an iterator that reads the next files in background threads. Lines of each file are read to a
+     * bounded queue, so at most prefetchCount files are open and memory use is limited.
+     *
+     * @param template      template for generating the readers of the files.
+     * @param files         files to read.
+     * @param prefetchCount amount of files to read ahead, including the current file.
+     */
+    public MultiFileLineIterator(SimpleTextReader.Template template, List<File> files, int prefetchCount) {
+        Preconditions.checkNotNull(template, "template cannot be null.");
+        Preconditions.checkNotNull(files, "files cannot be null.");
+        if (prefetchCount < 1)
+            throw new IllegalArgumentException("Prefetch count must be positive:" + prefetchCount);
+        this.files = new ArrayList<File>(files);
+        this.template = template;
+        this.executor = Executors.newFixedThreadPool(prefetchCount, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jcaki-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        while (fileCursor < this.files.size() && fileCursor < prefetchCount)
+            prefetch();
+    }
+
+    private void prefetch() {
+        FilePrefetcher prefetcher = new FilePrefetcher(files.get(fileCursor++));
+        prefetchers.add(prefetcher);
+        executor.execute(prefetcher);
+    }
+
     public boolean hasNext() {
+        if (executor != null)
+            return hasNextPrefetched();
         while (!currentIterator.hasNext()) {
             fileCursor++;
             currentIterator.close();
-            if (fileCursor < files.size())
+            if (fileCursor < files.size()) {
+                File file = files.get(fileCursor);
                 try {
-                    currentIterator = template.generateReader(files.get(fileCursor)).getLineIterator();
+                    currentIterator = template.generateReader(file).getLineIterator();
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    throw new IllegalStateException("Cannot read file:" + file, e);
                 }
-            else return false;
+            } else return false;
+        }
+        return true;
+    }
+
+    private boolean hasNextPrefetched() {
+        while (chunkIndex == chunk.length) {
+            if (current == null) {
+                if (prefetchers.isEmpty()) {
+                    executor.shutdown();
+                    return false;
+                }
+                current = prefetchers.removeFirst();
+            }
+            try {
+                chunk = current.queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting lines of " + current.file);
+            }
+            chunkIndex = 0;
+            if (chunk == END) {
+                if (current.failure != null) {
+                    FilePrefetcher failed = current;
+                    close();
+                    throw new IllegalStateException("Cannot read file:" + failed.file, failed.failure);
+                }
+                current = null;
+                if (fileCursor < files.size())
+                    prefetch();
+            }
         }
         return true;
     }
 
     public String next() {
+        if (!hasNext())
+            throw new NoSuchElementException("No more lines");
+        if (executor != null)
+            return chunk[chunkIndex++];
         return currentIterator.next();
     }
 
     public void remove() {
         throw new UnsupportedOperationException("remove ise not supported here.");
     }
+
+    /**
+     * closes the current file. In prefetch mode background readers are stopped and their files are closed.
+     */
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            prefetchers.clear();
+            current = null;
+            chunk = END;
+            chunkIndex = 0;
+        } else
+            currentIterator.close();
+    }
+
+    /**
+     * reads the lines of a file to a bounded queue in chunks. END is put to the queue after the last chunk
+     * or when an error occurs.
+     */
+    private class FilePrefetcher implements Runnable {
+        final File file;
+        final BlockingQueue<String[]> queue = new ArrayBlockingQueue<String[]>(PREFETCH_QUEUE_SIZE);
+        volatile Exception failure;
+
+        FilePrefetcher(File file) {
+            this.file = file;
+        }
+
+        public void run() {
+            LineIterator li = null;
+            try {
+                li = template.generateReader(file).getLineIterator();
+                String[] lines = new String[PREFETCH_CHUNK_SIZE];
+                int n = 0;
+                while (li.hasNext()) {
+                    lines[n++] = li.next();
+                    if (n == lines.length) {
+                        queue.put(lines);
+                        lines = new String[PREFETCH_CHUNK_SIZE];
+                        n = 0;
+                    }
+                }
+                if (n > 0) {
+                    String[] last = new String[n];
+                    System.arraycopy(lines, 0, last, 0, n);
+                    queue.put(last);
+                }
+            } catch (InterruptedException e) {
+                // iterator is closed.
+                return;
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                if (li != null)
+                    li.close();
+            }
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                // iterator is closed.
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,322 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import static org.jcaki.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the lines of multiple files in parallel when the order of the lines is not important. Each file is read
+ * and decoded by a single thread, and up to threadCount files are read at the same time. Lines can be sent to a
+ * thread safe consumer with {@link #forEachLine(LineConsumer)} or read from a bounded queue with
+ * {@link #iterator(int)}.
+ * <p/>
+ * Typical usage:
+ * <pre>
+ * List&lt;File&gt; files = Files.crawlDirectory(new File("corpus"), Files.extensionFilter("txt"));
+ * new ParallelFileLineReader(template, files, 4).forEachLine(consumer);
+ * </pre>
+ */
+public class ParallelFileLineReader {
+
+    private static final int CHUNK_SIZE = 256;
+    private static final String[] END = new String[0];
+
+    private final SimpleTextReader.Template template;
+    private final List<File> files;
+    private final int threadCount;
+    private ProgressListener progressListener;
+
+    /**
+     * receives the progress of the reading. Methods are called from the reading threads.
+     */
+    public interface ProgressListener {
+        /**
+         * called when all lines of a file are read.
+         *
+         * @param file           file that is read.
+         * @param lineCount      amount of lines read from the file.
+         * @param completedFiles amount of files read so far.
+         * @param totalFiles     total amount of files.
+         */
+        void fileCompleted(File file, long lineCount, int completedFiles, int totalFiles);
+    }
+
+    /**
+     * @param template    template for generating the readers of the files.
+     * @param files       files to read.
+     * @param threadCount maximum amount of files to read at the same time.
+     */
+    public ParallelFileLineReader(SimpleTextReader.Template template, List<File> files, int threadCount) {
+        checkNotNull(template, "template cannot be null.");
+        checkNotNull(files, "files cannot be null.");
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive:" + threadCount);
+        this.template = template;
+        this.files = new ArrayList<File>(files);
+        this.threadCount = threadCount;
+    }
+
+    public ParallelFileLineReader(List<File> files, int threadCount) {
+        this(new SimpleTextReader.Template(), files, threadCount);
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    private ExecutorService newExecutor() {
+        return Executors.newFixedThreadPool(Math.min(threadCount, Math.max(1, files.size())), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jcaki-file-reader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private void fileCompleted(File file, long lineCount, AtomicInteger completed) {
+        int completedFiles = completed.incrementAndGet();
+        if (progressListener != null)
+            progressListener.fileCompleted(file, lineCount, completedFiles, files.size());
+    }
+
+    /**
+     * reads all lines and sends them to the consumer. consumer is called from multiple threads concurrently,
+     * so it must be thread safe. Lines of a file are sent in order, but lines of different files are mixed.
+     * if reading of a file fails, the error is thrown as soon as it occurs. Files that are not started are not read
+     * and the files being read are stopped before their next line.
+     *
+     * @param consumer line consumer.
+     * @throws IOException if a file cannot be read.
+     */
+    public void forEachLine(final LineConsumer consumer) throws IOException {
+        checkNotNull(consumer, "consumer cannot be null.");
+        ExecutorService executor = newExecutor();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+        // futures are taken in completion order, so a failure is noticed without waiting for the files before it.
+        CompletionService<Long> completionService = new ExecutorCompletionService<Long>(executor);
+        try {
+            for (final File file : files) {
+                completionService.submit(new Callable<Long>() {
+                    public Long call() throws IOException {
+                        if (failed.get())
+                            return 0L;
+                        boolean succeeded = false;
+                        try {
+                            long lineCount = read(file);
+                            succeeded = true;
+                            return lineCount;
+                        } finally {
+                            // other tasks check this flag, so they stop without waiting for the reader thread.
+                            if (!succeeded)
+                                failed.set(true);
+                        }
+                    }
+
+                    private long read(File file) throws IOException {
+                        LineIterator li = template.generateReader(file).getLineIterator();
+                        long lineCount = 0;
+                        try {
+                            while (!failed.get() && li.hasNext()) {
+                                consumer.accept(li.next());
+                                lineCount++;
+                            }
+                        } finally {
+                            li.close();
+                        }
+                        if (!failed.get())
+                            fileCompleted(file, lineCount, completed);
+                        return lineCount;
+                    }
+                });
+            }
+            for (int i = 0; i < files.size(); i++) {
+                completionService.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reading is interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // stops the tasks that are still running after a failure.
+            failed.set(true);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * starts reading the files in background threads and returns an iterator over the lines. Lines are passed
+     * to the iterator in chunks through a bounded queue, so reading threads wait if the consumer is slow.
+     * Iterator should be closed if it is not read to the end. if a file cannot be read, iterator throws an
+     * IllegalStateException with the cause of the error.
+     *
+     * @param queueSize maximum amount of line chunks waiting in the queue.
+     * @return an iterator over the lines of all files.
+     */
+    public LineQueueIterator iterator(int queueSize) {
+        if (queueSize < 1)
+            throw new IllegalArgumentException("Queue size must be positive:" + queueSize);
+        return new LineQueueIterator(queueSize);
+    }
+
+    /**
+     * An iterator over the lines that are read by the background threads.
+     */
+    public class LineQueueIterator implements Iterator<String>, Closeable {
+
+        private final BlockingQueue<String[]> queue;
+        private final ExecutorService executor = newExecutor();
+        private final AtomicInteger remaining = new AtomicInteger(files.size());
+        private final AtomicInteger completed = new AtomicInteger();
+        private volatile Exception failure;
+        private volatile File failedFile;
+        private String[] chunk = END;
+        private int chunkIndex;
+        private boolean finished;
+
+        private LineQueueIterator(int queueSize) {
+            queue = new ArrayBlockingQueue<String[]>(queueSize);
+            if (files.isEmpty())
+                queue.add(END);
+            for (final File file : files) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        read(file);
+                    }
+                });
+            }
+        }
+
+        private void read(File file) {
+            LineIterator li = null;
+            try {
+                if (failure != null)
+                    return;
+                li = template.generateReader(file).getLineIterator();
+                String[] lines = new String[CHUNK_SIZE];
+                int n = 0;
+                long lineCount = 0;
+                while (li.hasNext()) {
+                    lines[n++] = li.next();
+                    lineCount++;
+                    if (n == lines.length) {
+                        queue.put(lines);
+                        lines = new String[CHUNK_SIZE];
+                        n = 0;
+                    }
+                }
+                if (n > 0) {
+                    String[] last = new String[n];
+                    System.arraycopy(lines, 0, last, 0, n);
+                    queue.put(last);
+                }
+                fileCompleted(file, lineCount, completed);
+            } catch (InterruptedException e) {
+                // iterator is closed.
+                return;
+            } catch (Exception e) {
+                failedFile = file;
+                failure = e;
+                // consumer checks the failure when it takes END.
+                putEnd();
+                return;
+            } finally {
+                if (li != null)
+                    li.close();
+            }
+            if (remaining.decrementAndGet() == 0)
+                putEnd();
+        }
+
+        private void putEnd() {
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                // iterator is closed.
+            }
+        }
+
+        public boolean hasNext() {
+            while (chunkIndex == chunk.length) {
+                if (finished)
+                    return false;
+                try {
+                    chunk = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for lines.");
+                }
+                chunkIndex = 0;
+                if (chunk == END) {
+                    Exception e = failure;
+                    close();
+                    if (e != null)
+                        throw new IllegalStateException("Cannot read file:" + failedFile, e);
+                }
+            }
+            return true;
+        }
+
+        public String next() {
+            if (!hasNext())
+                throw new NoSuchElementException("No more lines");
+            return chunk[chunkIndex++];
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove is not supported.");
+        }
+
+        /**
+         * stops the reading threads.
+         */
+        public void close() {
+            finished = true;
+            chunk = END;
+            chunkIndex = 0;
+            executor.shutdownNow();
+        }
+    }
+}
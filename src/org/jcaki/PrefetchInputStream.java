@@ -0,0 +1,160 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An input stream that reads its source with a background thread. Source is read in chunks to a bounded
+ * queue, so reading the source (for example decompressing it) runs in parallel with the reader of this stream.
+ * This class is not thread safe.
+ */
+final class PrefetchInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int QUEUE_SIZE = 4;
+    private static final byte[] END = new byte[0];
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+    private final InputStream source;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUE_SIZE);
+    private final Thread thread;
+    private volatile Throwable failure;
+    private volatile boolean closed;
+
+    private byte[] chunk;
+    private int position;
+    // length of the valid bytes in chunk.
+    private int limit;
+    private boolean eof;
+
+    PrefetchInputStream(InputStream source) {
+        this.source = source;
+        this.thread = new Thread(new Reader(), "PrefetchInputStream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private class Reader implements Runnable {
+        public void run() {
+            try {
+                while (!closed) {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    int length = 0;
+                    while (length < buffer.length) {
+                        int n = source.read(buffer, length, buffer.length - length);
+                        if (n == -1)
+                            break;
+                        length += n;
+                    }
+                    if (length == 0)
+                        break;
+                    if (length < buffer.length) {
+                        byte[] trimmed = new byte[length];
+                        System.arraycopy(buffer, 0, trimmed, 0, length);
+                        buffer = trimmed;
+                    }
+                    queue.put(buffer);
+                }
+            } catch (InterruptedException e) {
+                // stream is closed.
+                return;
+            } catch (Throwable t) {
+                failure = t;
+            }
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                // stream is closed.
+            }
+        }
+    }
+
+    // returns false at the end of the stream.
+    private boolean nextChunk() throws IOException {
+        if (closed)
+            throw new IOException("Stream is closed.");
+        if (eof)
+            return false;
+        byte[] next;
+        try {
+            next = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for data.");
+        }
+        if (next == END) {
+            eof = true;
+            Throwable t = failure;
+            if (t instanceof IOException)
+                throw (IOException) t;
+            if (t != null)
+                throw (IOException) new IOException("Cannot read the stream.").initCause(t);
+            return false;
+        }
+        chunk = next;
+        position = 0;
+        limit = next.length;
+        return true;
+    }
+
+    public int read() throws IOException {
+        if (position == limit && !nextChunk())
+            return -1;
+        return chunk[position++] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        if (position == limit && !nextChunk())
+            return -1;
+        int n = Math.min(len, limit - position);
+        System.arraycopy(chunk, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    public int available() throws IOException {
+        return limit - position;
+    }
+
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            // a read that ignores interrupts fails when its source is closed.
+            source.close();
+        } finally {
+            thread.interrupt();
+            try {
+                // thread is a daemon, it is not waited forever if the source does not stop.
+                thread.join(CLOSE_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
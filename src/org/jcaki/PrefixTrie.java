@@ -0,0 +1,124 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import static org.jcaki.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+
+/**
+ * A character trie of prefixes. {@link #matches(String, int, int)} checks if a text starts with any of the
+ * prefixes with a single pass over the first characters of the text, so the cost does not depend on the
+ * amount of prefixes.
+ */
+final class PrefixTrie {
+
+    private final Node root = new Node();
+
+    /**
+     * @param prefixes prefixes to match.
+     * @throws NullPointerException if prefixes or one of the prefixes is null.
+     */
+    PrefixTrie(String... prefixes) {
+        checkNotNull(prefixes, "prefixes cannot be null.");
+        for (String prefix : prefixes) {
+            checkNotNull(prefix, "prefix cannot be null.");
+            add(prefix);
+        }
+    }
+
+    private void add(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (node.terminal)
+                return; // a shorter prefix already matches all texts starting with this one.
+            node = node.getOrAdd(prefix.charAt(i));
+        }
+        node.terminal = true;
+        node.labels = new char[0];
+        node.children = new Node[0];
+    }
+
+    /**
+     * checks if s[start, end) starts with one of the prefixes.
+     *
+     * @param s     text
+     * @param start start index.
+     * @param end   end index. characters at and after end are not checked.
+     * @return true if there is a prefix match.
+     */
+    boolean matches(String s, int start, int end) {
+        Node node = root;
+        for (int i = start; ; i++) {
+            if (node.terminal)
+                return true;
+            if (i == end)
+                return false;
+            node = node.get(s.charAt(i));
+            if (node == null)
+                return false;
+        }
+    }
+
+    /**
+     * @param s text
+     * @return true if text starts with one of the prefixes.
+     */
+    boolean matches(String s) {
+        return matches(s, 0, s.length());
+    }
+
+    private static final class Node {
+        // sorted child characters and the children with the same order.
+        char[] labels = new char[0];
+        Node[] children = new Node[0];
+        boolean terminal;
+
+        Node get(char c) {
+            char[] l = labels;
+            if (l.length < 8) {
+                for (int i = 0; i < l.length; i++) {
+                    if (l[i] == c)
+                        return children[i];
+                }
+                return null;
+            }
+            int index = Arrays.binarySearch(l, c);
+            return index < 0 ? null : children[index];
+        }
+
+        Node getOrAdd(char c) {
+            int index = Arrays.binarySearch(labels, c);
+            if (index >= 0)
+                return children[index];
+            index = -index - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(labels, index, newLabels, index + 1, labels.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            Node node = new Node();
+            newLabels[index] = c;
+            newChildren[index] = node;
+            labels = newLabels;
+            children = newChildren;
+            return node;
+        }
+    }
+}
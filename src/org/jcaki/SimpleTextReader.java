@@ -21,9 +21,21 @@ package org.jcaki;
 import static org.jcaki.Preconditions.checkNotNull;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * SimpleTextReader can be used reading text sources with ease.
@@ -32,17 +44,24 @@ public final class SimpleTextReader implements Closeable {
 
     private final InputStream is;
     private final String encoding;
-    private Filter filters[] = new Filter[0];
+    private LineFilter lineFilter = LineFilter.PASS_ALL;
     private boolean trim = false;
     private Template template;
+    // source file, if reader is created for a file. required for random line access.
+    private File file;
+    private LineIndex lineIndex;
 
     public static class Builder {
         private InputStream _is;
+        private File _file;
         private Template _template = new Template();
+        // decompressing stream is read with a background thread, which is started in build().
+        private boolean _prefetch;
 
         public Builder(String fileName) throws IOException {
             checkNotNull(fileName, "File name cannot be null..");
             this._is = new FileInputStream(fileName);
+            this._file = new File(fileName);
         }
 
         public Builder(InputStream is) {
@@ -53,6 +72,7 @@ public final class SimpleTextReader implements Closeable {
         public Builder(File file) throws IOException {
             checkNotNull(file, "File name cannot be null..");
             this._is = new FileInputStream(file);
+            this._file = file;
         }
 
         public Builder encoding(String encoding) {
@@ -76,8 +96,42 @@ public final class SimpleTextReader implements Closeable {
             return this;
         }
 
+        /**
+         * sets the interval of the {@link LineIndex} used by {@link SimpleTextReader#readLines(long, long)}.
+         * Index keeps the offset of every interval-th line, so a larger interval uses less memory but up to
+         * interval-1 lines are skipped for each read. Default is {@link LineIndex#DEFAULT_INTERVAL}.
+         *
+         * @param interval index interval. must be positive.
+         * @return this builder.
+         */
+        public Builder lineIndexInterval(int interval) {
+            this._template.lineIndexInterval(interval);
+            return this;
+        }
+
+        /**
+         * reads a compressed input. Format is detected by checking the first bytes of the input with the codecs,
+         * if it does not match any of them input is read as plain text. Decompression is made with a separate
+         * thread, so it runs in parallel with decoding and filtering the lines. Methods that need the byte
+         * offsets of the lines in a file, like {@link SimpleTextReader#readLine(long)}, cannot be used.
+         *
+         * @param codecs codecs to check. if empty, {@link Codecs#GZIP} is checked.
+         * @return this builder.
+         * @throws IOException if an I/O error occurs while reading the first bytes.
+         */
+        public Builder compressed(Codec... codecs) throws IOException {
+            InputStream in = Codecs.markable(_is);
+            InputStream decompressed = Codecs.decompressor(in, codecs);
+            this._is = decompressed == null ? in : decompressed;
+            this._prefetch = decompressed != null;
+            this._file = null;
+            return this;
+        }
+
         public SimpleTextReader build() {
-            return new SimpleTextReader(_is, _template);
+            SimpleTextReader reader = new SimpleTextReader(_prefetch ? new PrefetchInputStream(_is) : _is, _template);
+            reader.file = _file;
+            return reader;
         }
 
         public Builder trim() {
@@ -92,6 +146,7 @@ public final class SimpleTextReader implements Closeable {
         private boolean _ignoreWhiteSpaceLines = false;
         private String _regexp;
         private String[] _ignorePrefix;
+        private int _lineIndexInterval = LineIndex.DEFAULT_INTERVAL;
 
         public Template() {
             _encoding = Charset.defaultCharset().name();
@@ -123,16 +178,25 @@ public final class SimpleTextReader implements Closeable {
             return this;
         }
 
+        public Template lineIndexInterval(int interval) {
+            if (interval < 1)
+                throw new IllegalArgumentException("Interval must be positive:" + interval);
+            this._lineIndexInterval = interval;
+            return this;
+        }
+
         public SimpleTextReader generateReader(InputStream is) throws IOException {
             return new SimpleTextReader(is, this);
         }
 
         public SimpleTextReader generateReader(String fileName) throws IOException {
-            return new SimpleTextReader(new FileInputStream(fileName), this);
+            return generateReader(new File(fileName));
         }
 
         public SimpleTextReader generateReader(File file) throws IOException {
-            return new SimpleTextReader(new FileInputStream(file), this);
+            SimpleTextReader reader = new SimpleTextReader(new FileInputStream(file), this);
+            reader.file = file;
+            return reader;
         }
 
         public Template trim() {
@@ -146,39 +210,11 @@ public final class SimpleTextReader implements Closeable {
         this.is = is;
         this.encoding = template._encoding;
 
-        List<Filter> filterz = new ArrayList<Filter>();
-        if (template._ignoreWhiteSpaceLines) {
-            filterz.add(StringFilters.PASS_ONLY_TEXT);
-        }
-        if (template._regexp != null) {
-            filterz.add(StringFilters.newRegexpFilter(template._regexp));
-        }
-        if (template._ignorePrefix != null) {
-            filterz.add(new IgnorePrefixFilter(template._ignorePrefix));
-        }
-
-        this.filters = filterz.toArray(new Filter[filterz.size()]);
-
+        this.lineFilter = LineFilter.compile(template._trim, template._ignoreWhiteSpaceLines,
+                template._ignorePrefix, template._regexp);
         this.trim = template._trim;
     }
 
-    private class IgnorePrefixFilter implements Filter<String> {
-        String[] tokens;
-
-        private IgnorePrefixFilter(String... token) {
-            checkNotNull(token, "Cannot initialize Filter with null string.");
-            this.tokens = token;
-        }
-
-        public boolean canPass(String s) {
-            for (String token : tokens) {
-                if (s.startsWith(token))
-                    return false;
-            }
-            return true;
-        }
-    }
-
     /**
      * Creates a FileReader using the File.
      *
@@ -189,6 +225,7 @@ public final class SimpleTextReader implements Closeable {
     public SimpleTextReader(File file) throws IOException {
         checkNotNull(file, "File name cannot be null..");
         this.is = new FileInputStream(file);
+        this.file = file;
         encoding = Charset.defaultCharset().name();
         this.template = new Template(encoding);
     }
@@ -196,6 +233,7 @@ public final class SimpleTextReader implements Closeable {
     public SimpleTextReader(File file, String encoding) throws IOException {
         checkNotNull(file, "File name cannot be null..");
         this.is = new FileInputStream(file);
+        this.file = file;
         if (encoding == null)
             this.encoding = Charset.defaultCharset().name();
         else
@@ -206,6 +244,7 @@ public final class SimpleTextReader implements Closeable {
     public SimpleTextReader(String fileName) throws IOException {
         checkNotNull(fileName, "File name cannot be null..");
         this.is = new FileInputStream(fileName);
+        this.file = new File(fileName);
         encoding = Charset.defaultCharset().name();
         this.template = new Template(encoding);
     }
@@ -213,6 +252,7 @@ public final class SimpleTextReader implements Closeable {
     public SimpleTextReader(String fileName, String encoding) throws IOException {
         checkNotNull(fileName, "File name cannot be null..");
         this.is = new FileInputStream(fileName);
+        this.file = new File(fileName);
         if (encoding == null)
             this.encoding = Charset.defaultCharset().name();
         else
@@ -345,6 +385,8 @@ public final class SimpleTextReader implements Closeable {
      * @throws NullPointerException if filename is null
      */
     public byte[] asByteArray() throws IOException {
+        if (is instanceof FileInputStream)
+            return readFileAsByteArray(((FileInputStream) is).getChannel());
         return IOs.readAsByteArray(is);
     }
 
@@ -355,12 +397,105 @@ public final class SimpleTextReader implements Closeable {
      * @throws java.io.IOException if an IO error occurs
      */
     public String asString() throws IOException {
-        String res = IOs.readAsString(getReader());
+        String res;
+        if (is instanceof FileInputStream)
+            res = readFileAsString(((FileInputStream) is).getChannel());
+        else
+            res = IOs.readAsString(getReader());
         if (trim)
             return res.trim();
         else return res;
     }
 
+    /**
+     * reads the rest of the file to an array sized from the file length.
+     */
+    private byte[] readFileAsByteArray(FileChannel channel) throws IOException {
+        try {
+            long length = channel.size() - channel.position();
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("File is too large to read to an array. Size:" + length);
+            byte[] bytes = new byte[(int) Math.max(0, length)];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+            if (buffer.hasRemaining()) {
+                // file is truncated after its size is checked.
+                byte[] read = new byte[buffer.position()];
+                System.arraycopy(bytes, 0, read, 0, read.length);
+                return read;
+            }
+            return bytes;
+        } finally {
+            IOs.closeSilently(channel, is);
+        }
+    }
+
+    /**
+     * memory maps the rest of the file and decodes it in one step. Result is the same as reading the lines and
+     * joining them with the line separator.
+     */
+    private String readFileAsString(FileChannel channel) throws IOException {
+        try {
+            Charset charset;
+            try {
+                charset = Strings.hasText(encoding) ? Charset.forName(encoding.trim()) : Charset.defaultCharset();
+            } catch (IllegalArgumentException e) {
+                throw new UnsupportedEncodingException(encoding);
+            }
+            long position = channel.position();
+            long length = channel.size() - position;
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("File is too large to read as a String. Size:" + length);
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.max(0, length));
+            // UTF-8 BOM is skipped, same with the line readers.
+            if (isUtf8() && bytes.remaining() >= 3 && bytes.get(0) == (byte) 0xef
+                    && bytes.get(1) == (byte) 0xbb && bytes.get(2) == (byte) 0xbf)
+                bytes.position(3);
+            CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer chars = CharBuffer.allocate(
+                    (int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte())));
+            CoderResult result = decoder.decode(bytes, chars, true);
+            if (!result.isUnderflow())
+                result.throwException();
+            result = decoder.flush(chars);
+            if (!result.isUnderflow())
+                result.throwException();
+            return joinLines(chars.array(), chars.position());
+        } finally {
+            IOs.closeSilently(channel, is);
+        }
+    }
+
+    /**
+     * replaces the line terminators (\n, \r and \r\n) with the system line separator and removes the last
+     * terminator. If separator is a single char, it is done in place.
+     */
+    private static String joinLines(char[] chars, int length) {
+        String separator = IOs.LINE_SEPARATOR;
+        StringBuilder sb = separator.length() == 1 ? null : new StringBuilder(length + length / 16);
+        int w = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < length && chars[i + 1] == '\n')
+                    i++;
+                if (i == length - 1)
+                    break;
+                if (sb == null)
+                    chars[w++] = separator.charAt(0);
+                else
+                    sb.append(separator);
+            } else if (sb == null)
+                chars[w++] = c;
+            else
+                sb.append(c);
+        }
+        return sb == null ? new String(chars, 0, w) : sb.toString();
+    }
+
     /**
      * Reads a reader as a list of strings. each item represents one line in the reader.
      *
@@ -368,7 +503,14 @@ public final class SimpleTextReader implements Closeable {
      * @throws java.io.IOException if an io error occurs
      */
     public List<String> asStringList() throws IOException {
-        return IOs.readAsStringList(getReader(), trim, filters);
+        List<String> lines = new ArrayList<String>();
+        LineIterator li = getLineIterator();
+        try {
+            li.nextBatch(lines, Integer.MAX_VALUE);
+        } finally {
+            IOs.closeSilently(li);
+        }
+        return lines;
     }
 
     /**
@@ -379,6 +521,8 @@ public final class SimpleTextReader implements Closeable {
      * @throws java.io.IOException if file does not exist or encoding is not available
      */
     BufferedReader getReader() throws IOException {
+        if (isUtf8())
+            return new Utf8LineReader(is);
         return IOs.getReader(is, encoding);
 
     }
@@ -393,7 +537,7 @@ public final class SimpleTextReader implements Closeable {
      * @throws java.io.IOException if file does not exist, or encoding is not supported.
      */
     public IterableLineReader getIterableReader() throws IOException {
-        return new IterableLineReader(getReader(), trim, filters);
+        return new IterableLineReader(getReader(), lineFilter);
     }
 
     /**
@@ -403,17 +547,60 @@ public final class SimpleTextReader implements Closeable {
      * @throws java.io.IOException if file does not exist, or encoding is not supported.
      */
     public LineIterator getLineIterator() throws IOException {
-        return new LineIterator(getReader(), trim, filters);
+        return new LineIterator(getReader(), lineFilter);
+    }
+
+    /**
+     * reads the lines in batches and sends them to the consumer. the same array is filled for every batch.
+     * Reader is closed after the operation.
+     *
+     * @param batchSize maximum amount of lines in a batch.
+     * @param consumer  batch consumer.
+     * @throws IOException if an IO error occurs.
+     */
+    public void forEachBatch(int batchSize, BatchConsumer consumer) throws IOException {
+        checkNotNull(consumer, "consumer cannot be null.");
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive:" + batchSize);
+        String[] batch = new String[batchSize];
+        LineIterator li = getLineIterator();
+        try {
+            int count;
+            while ((count = li.nextBatch(batch)) > 0) {
+                consumer.accept(batch, count);
+            }
+        } finally {
+            IOs.closeSilently(li);
+        }
     }
 
     /**
      * counts the lines. if there are constraints while creating the reader (eg: not reading empty lines),
      * it counts ONLY the lines that are allowed to be read.
+     * <p/>
+     * if the encoding is ascii compatible and there is no regular expression constraint,
+     * lines are counted at byte level without decoding them or creating Strings. if there are no constraints at all
+     * and reader is reading a file, file is memory mapped and parts of it are counted in parallel.
      *
      * @return line count.
      * @throws IOException if there is a problem while accesing the file.
      */
     public long countLines() throws IOException {
+        Charset charset = byteLevelCharset();
+        if (charset != null && template._regexp == null) {
+            if (is instanceof FileInputStream && !template._ignoreWhiteSpaceLines && template._ignorePrefix == null) {
+                FileChannel channel = ((FileInputStream) is).getChannel();
+                try {
+                    long from = channel.position();
+                    if (charset.name().equals("UTF-8"))
+                        from = skipUtf8Bom(channel, from);
+                    return ByteLineScanner.countLines(channel, from, Runtime.getRuntime().availableProcessors());
+                } finally {
+                    IOs.closeSilently(channel);
+                }
+            }
+            return countLinesByBytes(charset);
+        }
         long i;
         LineIterator li = null;
         try {
@@ -429,6 +616,300 @@ public final class SimpleTextReader implements Closeable {
         }
     }
 
+    /**
+     * reads a single line of the file using a {@link LineIndex}. see {@link #readLines(long, long)}
+     *
+     * @param n line number, starting from 0.
+     * @return the line, or null if file has less than n+1 lines.
+     * @throws IOException if an IO error occurs.
+     */
+    public String readLine(long n) throws IOException {
+        List<String> lines = readLines(n, n + 1);
+        return lines.isEmpty() ? null : lines.get(0);
+    }
+
+    /**
+     * reads the lines in [from, to) of the file. Lines are found with a {@link LineIndex} of the file, which is
+     * loaded from its sidecar file or built and saved on the first call (see {@link LineIndex#forFile(File, int)}),
+     * so only the requested lines and at most interval-1 lines before them are read (see
+     * {@link Builder#lineIndexInterval(int)}). Line numbers count all lines of the file, filters of the reader
+     * are not applied but lines are trimmed if reader trims.
+     * <p/>
+     * This requires a reader created for a file, with an ascii compatible encoding. Reader can be used for
+     * random access many times, it should be closed after use.
+     *
+     * @param from first line number, starting from 0.
+     * @param to   end line number, exclusive. if it is larger than the line count, lines until the end are read.
+     * @return the lines.
+     * @throws IOException           if an IO error occurs.
+     * @throws IllegalStateException if reader is not created for a file or encoding is not ascii compatible.
+     */
+    public List<String> readLines(long from, long to) throws IOException {
+        if (from < 0 || from > to)
+            throw new IllegalArgumentException("Illegal line range:[" + from + "," + to + ")");
+        Charset charset = byteLevelCharset();
+        if (file == null || charset == null)
+            throw new IllegalStateException("Random line access requires a file with an ascii compatible encoding.");
+        if (lineIndex == null)
+            lineIndex = LineIndex.forFile(file, template._lineIndexInterval);
+        List<String> lines = new ArrayList<String>();
+        to = Math.min(to, lineIndex.lineCount());
+        if (from >= to)
+            return lines;
+        long offset = lineIndex.offsetBefore(from);
+        long line = lineIndex.indexedLineBefore(from);
+        FileChannel channel = ((FileInputStream) is).getChannel();
+        // other read methods continue from the channel position, so it is restored.
+        long position = channel.position();
+        try {
+            channel.position(offset);
+            // scanner is not closed, it would close the channel.
+            ByteLineScanner scanner = new ByteLineScanner(channel);
+            if (offset == 0 && charset.name().equals("UTF-8"))
+                scanner.skipUtf8Bom();
+            while (line < to && scanner.next()) {
+                if (line >= from) {
+                    String s = scanner.lineAsString(charset);
+                    lines.add(trim ? s.trim() : s);
+                }
+                line++;
+            }
+        } finally {
+            channel.position(position);
+        }
+        return lines;
+    }
+
+    /**
+     * reads the lines with multiple threads and sends them to the consumer. consumer is called concurrently
+     * from different threads, so it needs to be thread safe. Order of the lines is not preserved.
+     *
+     * @param threadCount amount of threads.
+     * @param consumer    line consumer.
+     * @throws IOException if an IO error occurs.
+     * @see #parallelLines(int, boolean, LineConsumer)
+     */
+    public void parallelLines(int threadCount, LineConsumer consumer) throws IOException {
+        parallelLines(threadCount, false, consumer);
+    }
+
+    /**
+     * reads the lines with multiple threads and sends them to the consumer. File is split into byte ranges aligned
+     * to line boundaries, and each range is decoded, trimmed and filtered independently with the settings of this
+     * reader.
+     * <p/>
+     * if ordered is false, consumer is called by the reading threads concurrently, so it needs to be thread safe.
+     * if ordered is true, ranges are still read in parallel but the consumer is called from the calling thread
+     * in the order of the lines in the file.
+     * <p/>
+     * Parallel reading requires a file source and an ascii compatible encoding. Otherwise lines are sent to the
+     * consumer from the calling thread in order. Reader is closed after the operation.
+     *
+     * @param threadCount amount of threads.
+     * @param ordered     if true, consumer receives the lines in order, from the calling thread.
+     * @param consumer    line consumer.
+     * @throws IOException if an IO error occurs.
+     */
+    public void parallelLines(int threadCount, boolean ordered, final LineConsumer consumer) throws IOException {
+        checkNotNull(consumer, "consumer cannot be null.");
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive:" + threadCount);
+        Charset charset = byteLevelCharset();
+        if (charset == null || !(is instanceof FileInputStream) || threadCount == 1) {
+            LineIterator li = getLineIterator();
+            try {
+                while (li.hasNext())
+                    consumer.accept(li.next());
+            } finally {
+                IOs.closeSilently(li);
+            }
+            return;
+        }
+
+        final FileChannel channel = ((FileInputStream) is).getChannel();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            final long origin = channel.position();
+            long position = origin;
+            long size = channel.size();
+            long rangeSize = Math.max(MIN_RANGE_SIZE, Math.min(MAX_RANGE_SIZE, (size - position) / (threadCount * 4) + 1));
+            LinkedList<Future<List<String>>> pending = new LinkedList<Future<List<String>>>();
+            while (position < size || !pending.isEmpty()) {
+                // ordered mode keeps a limited amount of decoded ranges in memory.
+                while (position < size && (!ordered || pending.size() < threadCount * 2)) {
+                    final long start = position;
+                    final long end = alignToLine(channel, Math.min(size, position + rangeSize), size);
+                    final boolean first = start == origin;
+                    final boolean dispatch = !ordered;
+                    pending.add(executor.submit(new Callable<List<String>>() {
+                        public List<String> call() throws IOException {
+                            return readRange(channel, start, end, first, dispatch ? consumer : null);
+                        }
+                    }));
+                    position = end;
+                }
+                List<String> lines = pending.removeFirst().get();
+                if (ordered) {
+                    for (String line : lines)
+                        consumer.accept(line);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reading is interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            IOs.closeSilently(channel);
+        }
+    }
+
+    private static final long MIN_RANGE_SIZE = 1 << 20;
+    private static final long MAX_RANGE_SIZE = 1 << 26;
+
+    /**
+     * finds the position after the first \n byte that is at or after the given position.
+     */
+    private static long alignToLine(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0)
+                break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n')
+                    return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * reads the lines in the byte range. if consumer is null, lines are returned as a list.
+     */
+    private List<String> readRange(FileChannel channel, long start, long end, boolean first, LineConsumer consumer)
+            throws IOException {
+        InputStream rangeStream = new ByteBufferInputStream(
+                channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+        // only the beginning of the file may contain a BOM.
+        BufferedReader reader;
+        if (isUtf8())
+            reader = new Utf8LineReader(rangeStream, first);
+        else
+            reader = first ? IOs.getReader(rangeStream, encoding) :
+                    new BufferedReader(new InputStreamReader(rangeStream, byteLevelCharset().name()), IOs.CHAR_BUFFER_SIZE);
+        LineIterator li = new LineIterator(reader, lineFilter);
+        List<String> lines = new ArrayList<String>();
+        while (li.hasNext()) {
+            if (consumer == null)
+                lines.add(li.next());
+            else
+                consumer.accept(li.next());
+        }
+        return lines;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining())
+                return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+
+    /**
+     * @return true if encoding of the reader is UTF-8, so lines can be read with {@link Utf8LineReader}.
+     */
+    private boolean isUtf8() {
+        if (!Strings.hasText(encoding))
+            return false;
+        try {
+            return Charset.forName(encoding.trim()).name().equals("UTF-8");
+        } catch (IllegalArgumentException e) {
+            // unsupported encodings are reported by the decoding path.
+            return false;
+        }
+    }
+
+    /**
+     * @return the charset of the reader if lines can be scanned at byte level, null otherwise.
+     */
+    private Charset byteLevelCharset() {
+        Charset charset;
+        try {
+            charset = Strings.hasText(encoding) ? Charset.forName(encoding.trim()) : Charset.defaultCharset();
+        } catch (IllegalArgumentException e) {
+            // unsupported encodings are reported by the decoding path.
+            return null;
+        }
+        return ByteLineScanner.isAsciiCompatible(charset) ? charset : null;
+    }
+
+    // returns the position after the UTF-8 BOM if there is one at the position, otherwise the position.
+    private static long skipUtf8Bom(FileChannel channel, long position) throws IOException {
+        ByteBuffer bom = ByteBuffer.allocate(3);
+        while (bom.hasRemaining() && channel.read(bom, position + bom.position()) > 0) {
+        }
+        if (!bom.hasRemaining() && bom.get(0) == (byte) 0xef && bom.get(1) == (byte) 0xbb && bom.get(2) == (byte) 0xbf)
+            return position + 3;
+        return position;
+    }
+
+    private long countLinesByBytes(Charset charset) throws IOException {
+        ByteLineScanner scanner = new ByteLineScanner(is);
+        try {
+            if (charset.name().equals("UTF-8"))
+                scanner.skipUtf8Bom();
+            if (template._ignorePrefix == null && !template._ignoreWhiteSpaceLines)
+                return scanner.countRemaining();
+            byte[][] prefixes = new byte[0][];
+            if (template._ignorePrefix != null) {
+                prefixes = new byte[template._ignorePrefix.length][];
+                for (int i = 0; i < prefixes.length; i++) {
+                    prefixes[i] = template._ignorePrefix[i].getBytes(charset.name());
+                }
+            }
+            long count = 0;
+            while (scanner.next()) {
+                int firstText = scanner.firstNonWhitespace();
+                if (template._ignoreWhiteSpaceLines && firstText == scanner.lineLength())
+                    continue;
+                int offset = trim ? firstText : 0;
+                boolean ignore = false;
+                for (byte[] prefix : prefixes) {
+                    if (scanner.startsWith(prefix, offset)) {
+                        ignore = true;
+                        break;
+                    }
+                }
+                if (!ignore)
+                    count++;
+            }
+            return count;
+        } finally {
+            IOs.closeSilently(scanner);
+        }
+    }
+
     /**
      * Closes the stream silently.
      *
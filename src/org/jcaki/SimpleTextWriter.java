@@ -38,6 +38,22 @@ public final class SimpleTextWriter implements Closeable {
     private final boolean keepOpen;
     private final BufferedWriter writer;
     private final OutputStream os;
+    // used for formatting numbers and copying char sequences to the writer.
+    private final char[] charBuffer = new char[256];
+
+    /**
+     * Behavior of an asynchronous writer when all of its buffers are waiting to be written.
+     */
+    public enum OverflowPolicy {
+        /**
+         * writer waits until a buffer is written.
+         */
+        BLOCK,
+        /**
+         * written text is dropped. Text of a single write method call is dropped together if it fits to a buffer.
+         */
+        DROP
+    }
 
     /**
      * This class provides a flexible way of constructing a SimpleFileWriter instance. Caller can set the encoding, if write
@@ -47,34 +63,34 @@ public final class SimpleTextWriter implements Closeable {
     public static class Builder {
         private String _encoding;
         private boolean _keepOpen;
-        private BufferedWriter _writer;
         private OutputStream _os;
+        private int _asyncBufferSize;
+        private int _asyncQueueDepth;
+        private OverflowPolicy _overflowPolicy;
 
         public Builder(String fileName) throws IOException {
             checkNotNull(fileName, "File name cannot be null..");
             _encoding = Charset.defaultCharset().name();
             _os = new FileOutputStream(fileName);
-            this._writer = IOs.getBufferedWriter(_os, _encoding);
         }
 
         public Builder(OutputStream os) {
             checkNotNull(os, "File name cannot be null..");
             _encoding = Charset.defaultCharset().name();
             this._os = os;
-            this._writer = IOs.getBufferedWriter(os, _encoding);
         }
 
         public Builder(File file) throws IOException {
             checkNotNull(file, "File name cannot be null..");
             _encoding = Charset.defaultCharset().name();
             _os = new FileOutputStream(file);
-            this._writer = IOs.getBufferedWriter(_os, _encoding);
         }
 
         public Builder encoding(String encoding) {
             if (encoding == null)
                 this._encoding = Charset.defaultCharset().name();
-            this._encoding = encoding;
+            else
+                this._encoding = encoding;
             return this;
         }
 
@@ -83,8 +99,61 @@ public final class SimpleTextWriter implements Closeable {
             return this;
         }
 
+        /**
+         * compresses the written bytes with the codec. If writer is also asynchronous, compression is made by the
+         * background thread.
+         *
+         * @param codec compression format.
+         * @return this builder.
+         * @throws IOException if an I/O error occurs while writing the header of the format.
+         */
+        public Builder compressed(Codec codec) throws IOException {
+            checkNotNull(codec, "Codec cannot be null.");
+            this._os = codec.compress(_os);
+            return this;
+        }
+
+        /**
+         * makes the writer asynchronous with {@link OverflowPolicy#BLOCK} policy.
+         * see {@link #async(int, int, org.jcaki.SimpleTextWriter.OverflowPolicy)}
+         *
+         * @param bufferSize buffer size in bytes.
+         * @param queueDepth amount of buffers that can wait to be written.
+         * @return this builder.
+         */
+        public Builder async(int bufferSize, int queueDepth) {
+            return async(bufferSize, queueDepth, OverflowPolicy.BLOCK);
+        }
+
+        /**
+         * makes the writer asynchronous. Encoded text is copied to a buffer and full buffers are written by a
+         * background thread, so write methods do not wait for the disk. Text of every write method call is
+         * handed to the buffer when the call returns. If queueDepth buffers are waiting to be written, policy
+         * decides if the caller waits or the text is dropped. {@link SimpleTextWriter#flush()} waits until all
+         * text is written and {@link SimpleTextWriter#close()} writes the remaining text before closing.
+         *
+         * @param bufferSize buffer size in bytes.
+         * @param queueDepth amount of buffers that can wait to be written.
+         * @param policy     behavior when no buffer is available.
+         * @return this builder.
+         */
+        public Builder async(int bufferSize, int queueDepth, OverflowPolicy policy) {
+            checkNotNull(policy, "Overflow policy cannot be null.");
+            if (bufferSize < 1)
+                throw new IllegalArgumentException("Buffer size must be positive:" + bufferSize);
+            if (queueDepth < 1)
+                throw new IllegalArgumentException("Queue depth must be positive:" + queueDepth);
+            this._asyncBufferSize = bufferSize;
+            this._asyncQueueDepth = queueDepth;
+            this._overflowPolicy = policy;
+            return this;
+        }
+
         public SimpleTextWriter build() {
-            return new SimpleTextWriter(_writer, _os, _encoding, _keepOpen);
+            OutputStream os = _os;
+            if (_overflowPolicy != null)
+                os = new AsyncOutputStream(_os, _asyncBufferSize, _asyncQueueDepth, _overflowPolicy);
+            return new SimpleTextWriter(getWriter(os, _encoding), os, _encoding, _keepOpen);
         }
     }
 
@@ -183,7 +252,7 @@ public final class SimpleTextWriter implements Closeable {
     public SimpleTextWriter(String fileName, String encoding) throws IOException {
         checkNotNull(fileName, "File name cannot be null..");
         this.os = new FileOutputStream(fileName);
-        this.writer = IOs.getBufferedWriter(os, encoding);
+        this.writer = getWriter(os, encoding);
         this.encoding = encoding;
         keepOpen = false;
     }
@@ -201,7 +270,7 @@ public final class SimpleTextWriter implements Closeable {
     public SimpleTextWriter(File file, String encoding) throws IOException {
         checkNotNull(file, "File cannot be null..");
         this.os = new FileOutputStream(file);
-        this.writer = IOs.getBufferedWriter(os,encoding);
+        this.writer = getWriter(os, encoding);
         this.encoding = encoding;
         keepOpen = false;
     }
@@ -219,6 +288,21 @@ public final class SimpleTextWriter implements Closeable {
         this(file, Charset.defaultCharset().name());
     }
 
+    /**
+     * returns a {@link Utf8Writer} for UTF-8, a BufferedWriter over an OutputStreamWriter for other encodings.
+     */
+    private static BufferedWriter getWriter(OutputStream os, String encoding) {
+        if (Strings.hasText(encoding)) {
+            try {
+                if (Charset.forName(encoding.trim()).name().equals("UTF-8"))
+                    return new Utf8Writer(os);
+            } catch (IllegalArgumentException e) {
+                // unsupported encodings are reported by the OutputStreamWriter.
+            }
+        }
+        return IOs.getBufferedWriter(os, encoding);
+    }
+
     /**
      * returns the current encoding.
      *
@@ -232,6 +316,29 @@ public final class SimpleTextWriter implements Closeable {
         return keepOpen;
     }
 
+    /**
+     * @return true if writer is created with {@link Builder#async(int, int)}
+     */
+    public boolean isAsync() {
+        return os instanceof AsyncOutputStream;
+    }
+
+    /**
+     * @return amount of bytes dropped by an asynchronous writer with {@link OverflowPolicy#DROP} policy.
+     */
+    public long getDroppedByteCount() {
+        return isAsync() ? ((AsyncOutputStream) os).droppedBytes() : 0;
+    }
+
+    // called after every write method.
+    private void done() throws IOException {
+        if (!keepOpen)
+            close();
+        else if (isAsync())
+            // hands the text of the call to the async buffer.
+            writer.flush();
+    }
+
     /**
      * Writes value of each String in a collection to
      *
@@ -245,8 +352,7 @@ public final class SimpleTextWriter implements Closeable {
             IOs.writeLines(lines, writer);
             return this;
         } finally {
-            if (!keepOpen)
-                close();
+            done();
         }
     }
 
@@ -275,8 +381,7 @@ public final class SimpleTextWriter implements Closeable {
             IOs.writeToStringLines(objects, writer);
             return this;
         } finally {
-            if (!keepOpen)
-                close();
+            done();
         }
     }
 
@@ -295,8 +400,7 @@ public final class SimpleTextWriter implements Closeable {
             writer.write(s);
             return this;
         } finally {
-            if (!keepOpen)
-                close();
+            done();
         }
     }
 
@@ -309,7 +413,103 @@ public final class SimpleTextWriter implements Closeable {
      * @throws java.io.IOException if an I/O error occurs
      */
     public SimpleTextWriter writeLine(String s) throws IOException {
-        return write(s + IOs.LINE_SEPARATOR);
+        try {
+            writer.write(s == null ? "null" : s);
+            writer.write(IOs.LINE_SEPARATOR);
+            return this;
+        } finally {
+            done();
+        }
+    }
+
+    /**
+     * Writes a CharSequence to the file after appending a line separator to it. Characters are copied to the
+     * writer without creating a String.
+     *
+     * @param cs : characters to write.
+     * @return returns the current instance. keep in mind that if instance is not constructed
+     *         with keepOpen(), chaining other write methods will throw an exception.
+     * @throws java.io.IOException if an I/O error occurs
+     */
+    public SimpleTextWriter writeLine(CharSequence cs) throws IOException {
+        try {
+            if (cs == null)
+                writer.write("null");
+            else if (cs instanceof String)
+                writer.write((String) cs);
+            else {
+                int length = cs.length();
+                for (int i = 0; i < length; i += charBuffer.length) {
+                    int n = Math.min(charBuffer.length, length - i);
+                    for (int j = 0; j < n; j++) {
+                        charBuffer[j] = cs.charAt(i + j);
+                    }
+                    writer.write(charBuffer, 0, n);
+                }
+            }
+            writer.write(IOs.LINE_SEPARATOR);
+            return this;
+        } finally {
+            done();
+        }
+    }
+
+    /**
+     * Writes a part of a char array to the file after appending a line separator to it.
+     *
+     * @param chars  : char array.
+     * @param offset : start of the characters to write.
+     * @param length : amount of characters to write.
+     * @return returns the current instance. keep in mind that if instance is not constructed
+     *         with keepOpen(), chaining other write methods will throw an exception.
+     * @throws java.io.IOException if an I/O error occurs
+     */
+    public SimpleTextWriter writeLine(char[] chars, int offset, int length) throws IOException {
+        try {
+            writer.write(chars, offset, length);
+            writer.write(IOs.LINE_SEPARATOR);
+            return this;
+        } finally {
+            done();
+        }
+    }
+
+    /**
+     * Writes the decimal value of a long number without creating a String.
+     *
+     * @param l : number to write.
+     * @return returns the current instance. keep in mind that if instance is not constructed
+     *         with keepOpen(), chaining other write methods will throw an exception.
+     * @throws java.io.IOException if an I/O error occurs
+     */
+    public SimpleTextWriter append(long l) throws IOException {
+        try {
+            // digits are written from the end. negative values are used so that Long.MIN_VALUE works.
+            int p = 20;
+            long v = l < 0 ? l : -l;
+            do {
+                charBuffer[--p] = (char) ('0' - (v % 10));
+                v /= 10;
+            } while (v != 0);
+            if (l < 0)
+                charBuffer[--p] = '-';
+            writer.write(charBuffer, p, 20 - p);
+            return this;
+        } finally {
+            done();
+        }
+    }
+
+    /**
+     * Writes the decimal value of an int number without creating a String.
+     *
+     * @param i : number to write.
+     * @return returns the current instance. keep in mind that if instance is not constructed
+     *         with keepOpen(), chaining other write methods will throw an exception.
+     * @throws java.io.IOException if an I/O error occurs
+     */
+    public SimpleTextWriter append(int i) throws IOException {
+        return append((long) i);
     }
 
     /**
@@ -319,7 +519,7 @@ public final class SimpleTextWriter implements Closeable {
      * @throws IOException if an I/O error occurs
      */
     public SimpleTextWriter writeLine() throws IOException {
-        return write("" + IOs.LINE_SEPARATOR);
+        return write(IOs.LINE_SEPARATOR);
     }
 
     /**
@@ -331,7 +531,7 @@ public final class SimpleTextWriter implements Closeable {
      * @throws java.io.IOException if an I/O error occurs
      */
     public SimpleTextWriter writeLine(Object obj) throws IOException {
-        return write(obj.toString() + IOs.LINE_SEPARATOR);
+        return writeLine(obj.toString());
     }
 
     /**
@@ -342,6 +542,7 @@ public final class SimpleTextWriter implements Closeable {
      * @throws IOException if an I/O error occurs
      */
     public SimpleTextWriter copyFromStream(InputStream is) throws IOException {
+        writer.flush();
         IOs.copy(is, os, keepOpen);
         return this;
     }
@@ -355,6 +556,7 @@ public final class SimpleTextWriter implements Closeable {
      */
     public SimpleTextWriter copyFromURL(String urlStr) throws IOException {
         URL url = new URL(urlStr);
+        writer.flush();
         IOs.copy(url.openStream(), os, keepOpen);
         return this;
     }
@@ -366,7 +568,23 @@ public final class SimpleTextWriter implements Closeable {
      */
     public void close() throws IOException {
         writer.flush();
-        IOs.closeSilently(writer);
+        if (isAsync())
+            // remaining buffers are written while closing, so errors are not ignored.
+            writer.close();
+        else
+            IOs.closeSilently(writer);
+    }
+
+    /**
+     * writes the buffered text. For an asynchronous writer, it waits until all text is written to the target
+     * and if target is a file, forces it to the storage device.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void flush() throws IOException {
+        writer.flush();
+        if (isAsync())
+            ((AsyncOutputStream) os).sync();
     }
 
 }
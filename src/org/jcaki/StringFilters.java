@@ -47,6 +47,17 @@ class StringFilters {
         return new PrefixFilter(prefix);
     }
 
+    /**
+     * creates a filter that passes the Strings starting with any of the prefixes. Prefixes are kept in a trie,
+     * so a String is checked with a single pass over its first characters.
+     *
+     * @param prefixes prefixes.
+     * @return a Filter.
+     */
+    public static Filter newMultiPrefixFilter(String... prefixes) {
+        return new MultiPrefixFilter(prefixes);
+    }
+
     private static class AllPassFilter implements Filter<String> {
         public boolean canPass(String str) {
             return true;
@@ -78,6 +89,18 @@ class StringFilters {
         }
     }
 
+    private static class MultiPrefixFilter implements Filter<String> {
+        final PrefixTrie trie;
+
+        private MultiPrefixFilter(String... prefixes) {
+            this.trie = new PrefixTrie(prefixes);
+        }
+
+        public boolean canPass(String s) {
+            return s != null && trie.matches(s);
+        }
+    }
+
     private static class RegexpFilter implements Filter<String> {
         final Pattern pattern;
 
@@ -0,0 +1,288 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import static org.jcaki.Preconditions.checkNotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A BufferedReader for UTF-8 input streams that is optimized for {@link #readLine()}. Bytes are read to a buffer
+ * and line terminators are searched 8 bytes at a time. If all bytes of a line are ASCII, the String is created
+ * directly from the bytes, a decoder is used only for the lines containing multi byte characters.
+ * <p/>
+ * Lines are terminated by \n, \r or \r\n, same as {@link BufferedReader#readLine()}. Malformed input is replaced
+ * with the replacement character, same as {@link java.io.InputStreamReader}. UTF-8 BOM at the beginning of the
+ * stream is skipped. mark() and reset() are not supported.
+ */
+public class Utf8LineReader extends BufferedReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LF_BYTES = ONES * '\n';
+    private static final long CR_BYTES = ONES * '\r';
+
+    private final InputStream in;
+    private final CharsetDecoder decoder;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    // used for reading 8 bytes at a time from the buffer.
+    private ByteBuffer words = ByteBuffer.wrap(buffer);
+    // valid bytes are between position and limit.
+    private int position;
+    private int limit;
+    private boolean eof;
+    private boolean checkBom;
+    // if last line ended with a \r, a following \n belongs to that line terminator.
+    private boolean skipLF;
+    // second char of a surrogate pair that did not fit to the array in read(char[], int, int)
+    private int pendingChar = -1;
+    private char[] chars = new char[256];
+    private boolean closed;
+
+    /**
+     * creates a reader that skips the UTF-8 BOM at the beginning of the stream.
+     *
+     * @param in input stream.
+     */
+    public Utf8LineReader(InputStream in) {
+        this(in, true);
+    }
+
+    /**
+     * @param in      input stream.
+     * @param skipBom if true, UTF-8 BOM at the beginning of the stream is skipped.
+     */
+    public Utf8LineReader(InputStream in, boolean skipBom) {
+        super(new StringReader(""), 1);
+        checkNotNull(in, "input stream cannot be null.");
+        this.in = in;
+        this.checkBom = skipBom;
+        this.decoder = Charset.forName("UTF-8").newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * moves the unread bytes to the beginning of the buffer and reads more bytes.
+     *
+     * @return false if there are no bytes to read.
+     */
+    private boolean fill() throws IOException {
+        if (eof)
+            return false;
+        int remaining = limit - position;
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        } else if (remaining == buffer.length) {
+            // a line longer than the buffer.
+            byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, remaining);
+            buffer = grown;
+            words = ByteBuffer.wrap(buffer);
+        }
+        position = 0;
+        limit = remaining;
+        int read;
+        do {
+            read = in.read(buffer, limit, buffer.length - limit);
+        } while (read == 0);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private void prepare() throws IOException {
+        if (closed)
+            throw new IOException("Reader is closed.");
+        if (checkBom) {
+            while (limit - position < 3 && fill()) {
+            }
+            if (limit - position >= 3 && buffer[position] == (byte) 0xef && buffer[position + 1] == (byte) 0xbb
+                    && buffer[position + 2] == (byte) 0xbf)
+                position += 3;
+            checkBom = false;
+        }
+        if (skipLF) {
+            if (position < limit || fill()) {
+                if (buffer[position] == '\n')
+                    position++;
+            }
+            skipLF = false;
+        }
+    }
+
+    // true if any byte of the word is zero.
+    private static boolean hasZeroByte(long word) {
+        return ((word - ONES) & ~word & HIGH_BITS) != 0;
+    }
+
+    public String readLine() throws IOException {
+        prepare();
+        if (pendingChar >= 0) {
+            char c = (char) pendingChar;
+            pendingChar = -1;
+            String rest = readLine();
+            return rest == null ? String.valueOf(c) : c + rest;
+        }
+        int scan = position;
+        long highBits = 0;
+        while (true) {
+            // skip the words that does not contain a line terminator.
+            while (scan + 8 <= limit) {
+                long word = words.getLong(scan);
+                if (hasZeroByte(word ^ LF_BYTES) || hasZeroByte(word ^ CR_BYTES))
+                    break;
+                highBits |= word;
+                scan += 8;
+            }
+            while (scan < limit) {
+                byte b = buffer[scan];
+                if (b == '\n' || b == '\r') {
+                    String line = decode(position, scan - position, (highBits & HIGH_BITS) == 0);
+                    position = scan + 1;
+                    skipLF = b == '\r';
+                    return line;
+                }
+                highBits |= b & 0x80;
+                scan++;
+            }
+            int scanned = scan - position;
+            if (!fill()) {
+                if (limit == position)
+                    return null;
+                // last line without a terminator.
+                String line = decode(position, limit - position, (highBits & HIGH_BITS) == 0);
+                position = limit;
+                return line;
+            }
+            scan = position + scanned;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private String decode(int start, int length, boolean ascii) {
+        if (ascii) {
+            // creates the String directly from the bytes. all bytes are ASCII so they are the same chars.
+            return new String(buffer, 0, start, length);
+        }
+        // a UTF-8 line never has more chars than bytes.
+        if (chars.length < length)
+            chars = new char[Math.max(length, chars.length * 2)];
+        CharBuffer out = CharBuffer.wrap(chars);
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(buffer, start, length), out, true);
+        decoder.flush(out);
+        return new String(chars, 0, out.position());
+    }
+
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > cbuf.length)
+            throw new IndexOutOfBoundsException();
+        prepare();
+        if (len == 0)
+            return 0;
+        if (pendingChar >= 0) {
+            cbuf[off] = (char) pendingChar;
+            pendingChar = -1;
+            return 1;
+        }
+        while (true) {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, position, limit - position);
+            CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+            // UTF-8 decoder keeps incomplete sequences in the input, so it does not carry state between calls.
+            decoder.reset();
+            CoderResult result = decoder.decode(bytes, out, eof);
+            position = bytes.position();
+            int count = out.position() - off;
+            if (count > 0)
+                return count;
+            if (result.isOverflow()) {
+                // a surrogate pair does not fit to a single char.
+                CharBuffer pair = CharBuffer.allocate(2);
+                decoder.reset();
+                bytes = ByteBuffer.wrap(buffer, position, limit - position);
+                decoder.decode(bytes, pair, eof);
+                position = bytes.position();
+                cbuf[off] = pair.get(0);
+                if (pair.position() > 1)
+                    pendingChar = pair.get(1);
+                return 1;
+            }
+            if (eof)
+                return -1;
+            fill();
+        }
+    }
+
+    public int read() throws IOException {
+        char[] c = new char[1];
+        return read(c, 0, 1) == -1 ? -1 : c[0];
+    }
+
+    public long skip(long n) throws IOException {
+        if (n < 0)
+            throw new IllegalArgumentException("skip value is negative");
+        char[] skipBuffer = new char[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(skipBuffer, 0, (int) Math.min(n - skipped, skipBuffer.length));
+            if (read == -1)
+                break;
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    public boolean ready() throws IOException {
+        if (closed)
+            throw new IOException("Reader is closed.");
+        return pendingChar >= 0 || position < limit || in.available() > 0;
+    }
+
+    public boolean markSupported() {
+        return false;
+    }
+
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() is not supported.");
+    }
+
+    public void reset() throws IOException {
+        throw new IOException("reset() is not supported.");
+    }
+
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        in.close();
+    }
+}
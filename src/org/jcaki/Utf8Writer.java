@@ -0,0 +1,253 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import static org.jcaki.Preconditions.checkNotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A BufferedWriter that encodes characters to UTF-8 directly into a byte buffer, without a charset encoder and
+ * an intermediate char buffer. ASCII characters are copied as single bytes. If the output stream is a
+ * FileOutputStream, buffer is written through its FileChannel.
+ * <p/>
+ * Unpaired surrogate characters are written as '?', same as {@link OutputStreamWriter}.
+ * Byte buffers are reused by the writers created later after a writer is closed.
+ */
+public class Utf8Writer extends BufferedWriter {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    // maximum amount of byte buffers kept for reuse.
+    private static final int POOL_SIZE = 4;
+    private static final List<byte[]> pool = new ArrayList<byte[]>(POOL_SIZE);
+
+    private final OutputStream os;
+    private final FileChannel channel;
+    private byte[] buffer;
+    private ByteBuffer byteBuffer;
+    private int position;
+    // high surrogate written as the last char of the previous write call.
+    private char pendingHighSurrogate;
+    private boolean closed;
+
+    /**
+     * @param os output stream.
+     */
+    public Utf8Writer(OutputStream os) {
+        this(os, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param os         output stream.
+     * @param bufferSize byte buffer size. buffers smaller than {@link #DEFAULT_BUFFER_SIZE} are not used.
+     */
+    public Utf8Writer(OutputStream os, int bufferSize) {
+        super(new StringWriter(0), 1);
+        checkNotNull(os, "output stream cannot be null.");
+        this.os = os;
+        this.channel = os instanceof FileOutputStream ? ((FileOutputStream) os).getChannel() : null;
+        this.buffer = takeBuffer(Math.max(bufferSize, DEFAULT_BUFFER_SIZE));
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    private static byte[] takeBuffer(int size) {
+        synchronized (pool) {
+            for (int i = 0; i < pool.size(); i++) {
+                if (pool.get(i).length == size)
+                    return pool.remove(i);
+            }
+        }
+        return new byte[size];
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        synchronized (pool) {
+            if (pool.size() < POOL_SIZE)
+                pool.add(buffer);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Writer is closed.");
+    }
+
+    public void write(int c) throws IOException {
+        ensureOpen();
+        if (c < 0x80 && pendingHighSurrogate == 0) {
+            if (position == buffer.length)
+                flushBuffer();
+            buffer[position++] = (byte) c;
+        } else
+            encode((char) c);
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > cbuf.length)
+            throw new IndexOutOfBoundsException();
+        ensureOpen();
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            if (pendingHighSurrogate == 0) {
+                // ascii run, copied directly.
+                int n = Math.min(end - i, buffer.length - position);
+                int limit = i + n;
+                byte[] b = buffer;
+                int p = position;
+                while (i < limit) {
+                    char c = cbuf[i];
+                    if (c >= 0x80)
+                        break;
+                    b[p++] = (byte) c;
+                    i++;
+                }
+                position = p;
+                if (position == buffer.length)
+                    flushBuffer();
+                if (i == end)
+                    break;
+                if (i < limit)
+                    encode(cbuf[i++]);
+            } else
+                encode(cbuf[i++]);
+        }
+    }
+
+    public void write(String s, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > s.length())
+            throw new IndexOutOfBoundsException();
+        ensureOpen();
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            if (pendingHighSurrogate == 0) {
+                int n = Math.min(end - i, buffer.length - position);
+                int limit = i + n;
+                byte[] b = buffer;
+                int p = position;
+                while (i < limit) {
+                    char c = s.charAt(i);
+                    if (c >= 0x80)
+                        break;
+                    b[p++] = (byte) c;
+                    i++;
+                }
+                position = p;
+                if (position == buffer.length)
+                    flushBuffer();
+                if (i == end)
+                    break;
+                if (i < limit)
+                    encode(s.charAt(i++));
+            } else
+                encode(s.charAt(i++));
+        }
+    }
+
+    // encodes a single char, a high surrogate is kept until the next char.
+    private void encode(char c) throws IOException {
+        if (buffer.length - position < 4)
+            flushBuffer();
+        byte[] b = buffer;
+        int p = position;
+        if (pendingHighSurrogate != 0) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                b[p++] = (byte) (0xf0 | (cp >> 18));
+                b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                b[p++] = (byte) (0x80 | (cp & 0x3f));
+                position = p;
+                return;
+            }
+            b[p++] = '?';
+            if (buffer.length - p < 4) {
+                position = p;
+                flushBuffer();
+                p = 0;
+            }
+        }
+        if (c < 0x80) {
+            b[p++] = (byte) c;
+        } else if (c < 0x800) {
+            b[p++] = (byte) (0xc0 | (c >> 6));
+            b[p++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            b[p++] = '?';
+        } else {
+            b[p++] = (byte) (0xe0 | (c >> 12));
+            b[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            b[p++] = (byte) (0x80 | (c & 0x3f));
+        }
+        position = p;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position == 0)
+            return;
+        if (channel != null) {
+            byteBuffer.clear().limit(position);
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+        } else
+            os.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * writes the buffered bytes to the output stream and flushes it. A pending high surrogate is kept, because
+     * its low surrogate may be written later.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer();
+        os.flush();
+    }
+
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            if (pendingHighSurrogate != 0) {
+                pendingHighSurrogate = 0;
+                write('?');
+            }
+            flushBuffer();
+            os.flush();
+        } finally {
+            closed = true;
+            releaseBuffer(buffer);
+            buffer = null;
+            byteBuffer = null;
+            os.close();
+        }
+    }
+}
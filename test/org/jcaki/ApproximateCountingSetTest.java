@@ -0,0 +1,66 @@
+package org.jcaki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class ApproximateCountingSetTest {
+
+    @Test
+    public void testPointQueries() {
+        ApproximateCountingSet<String> approximate = new ApproximateCountingSet<String>(0.001, 0.01, 50);
+        CountingSet<String> exact = new CountingSet<String>();
+        Random random = new Random(1);
+        for (int i = 0; i < 50000; i++) {
+            // skewed distribution.
+            String s = "w" + (int) Math.pow(random.nextInt(1000), 2) / 1000;
+            approximate.add(s);
+            exact.add(s);
+        }
+        Assert.assertEquals(exact.countAll(), approximate.countAll());
+        for (String s : exact) {
+            long estimate = approximate.getCount(s);
+            Assert.assertTrue(estimate >= exact.getCount(s));
+            Assert.assertTrue(estimate <= exact.getCount(s) + approximate.errorBound());
+            Assert.assertTrue(approximate.getGuaranteedCount(s) <= exact.getCount(s));
+        }
+    }
+
+    @Test
+    public void testHeavyHitters() {
+        // elements with a count larger than total/capacity are always monitored.
+        ApproximateCountingSet<String> set = new ApproximateCountingSet<String>(20);
+        for (int i = 0; i < 10000; i++) {
+            set.add("noise" + i);
+            if (i % 4 == 0)
+                set.add("a");
+            if (i % 8 == 0)
+                set.add("b");
+        }
+        List<String> top = set.getFirstSorted(2);
+        Assert.assertEquals("a", top.get(0));
+        Assert.assertEquals("b", top.get(1));
+        Assert.assertEquals(20, set.monitoredSize());
+    }
+
+    @Test
+    public void testMerge() {
+        ApproximateCountingSet<String> set1 = new ApproximateCountingSet<String>(10);
+        ApproximateCountingSet<String> set2 = new ApproximateCountingSet<String>(10);
+        set1.add("Apple", "Apple", "Pear");
+        set2.add("Apple", "Plum", "Plum", "Plum", "Plum");
+        set1.merge(set2);
+        Assert.assertEquals(8, set1.countAll());
+        Assert.assertEquals(3, set1.getCount("Apple"));
+        Assert.assertEquals(4, set1.getCount("Plum"));
+        Assert.assertEquals("Plum", set1.getFirstSorted(1).get(0));
+        Assert.assertEquals(3, set1.monitoredSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentParameters() {
+        new ApproximateCountingSet<String>(10).merge(new ApproximateCountingSet<String>(20));
+    }
+}
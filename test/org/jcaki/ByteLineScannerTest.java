@@ -0,0 +1,105 @@
+package org.jcaki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ByteLineScannerTest {
+
+    private List<String> scan(byte[] bytes) throws IOException {
+        ByteLineScanner scanner = new ByteLineScanner(new ByteArrayInputStream(bytes));
+        List<String> lines = new ArrayList<String>();
+        try {
+            while (scanner.next())
+                lines.add(scanner.lineAsString(Charset.forName("UTF-8")));
+        } finally {
+            scanner.close();
+        }
+        return lines;
+    }
+
+    private List<String> readLines(byte[] bytes) throws IOException {
+        return IOs.readAsStringList(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), "UTF-8")));
+    }
+
+    @Test
+    public void testLineTerminators() throws IOException {
+        String[] inputs = {"", "a", "a\n", "a\nb", "\n\n", "a\r\nb\rc\n\rd", "\r", "\r\n", "a\r\r\n"};
+        for (String input : inputs) {
+            byte[] bytes = input.getBytes("UTF-8");
+            Assert.assertEquals(readLines(bytes), scan(bytes));
+        }
+    }
+
+    @Test
+    public void testLongLines() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            for (int j = 0; j < i * 7 % 300; j++)
+                sb.append((char) ('a' + j % 26));
+            sb.append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        // a line longer than the buffer.
+        for (int i = 0; i < 200000; i++)
+            sb.append('x');
+        byte[] bytes = sb.toString().getBytes("UTF-8");
+        Assert.assertEquals(readLines(bytes), scan(bytes));
+    }
+
+    @Test
+    public void testBomAndPrefix() throws IOException {
+        ByteLineScanner scanner = new ByteLineScanner(new File("test/turkish_utf8_with_BOM.txt"));
+        try {
+            scanner.skipUtf8Bom();
+            Assert.assertTrue(scanner.next());
+            Assert.assertTrue(scanner.startsWith("\u015f".getBytes("UTF-8"), 0));
+            Assert.assertEquals("\u015fey", scanner.lineAsString(Charset.forName("UTF-8")));
+            Assert.assertFalse(scanner.next());
+            Assert.assertEquals(1, scanner.lineCount());
+        } finally {
+            scanner.close();
+        }
+    }
+
+    @Test
+    public void testParallelCount() throws IOException {
+        File file = File.createTempFile("jcaki", ".txt");
+        try {
+            byte[] bytes = new byte[5 * 1024 * 1024 + 17];
+            Random random = new Random(5);
+            byte[] alphabet = {'a', 'b', '\r', '\n', ' '};
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            // \r\n pairs on the segment boundaries.
+            for (int i = 1; i <= 5; i++) {
+                bytes[i * 1024 * 1024 - 1] = '\r';
+                bytes[i * 1024 * 1024] = '\n';
+            }
+            FileOutputStream fos = new FileOutputStream(file);
+            fos.write(bytes);
+            fos.close();
+            long expected = new ByteLineScanner(file).countRemaining();
+            for (int threadCount : new int[]{1, 2, 5, 8}) {
+                FileChannel channel = new FileInputStream(file).getChannel();
+                Assert.assertEquals(expected, ByteLineScanner.countLines(channel, 0, threadCount));
+                channel.close();
+            }
+            Assert.assertEquals(expected, new SimpleTextReader(file, "utf-8").countLines());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPOutputStream;
+
+public class CodecsTest {
+
+    File tmpFile;
+    List<String> lines;
+
+    @Before
+    public void before() throws IOException {
+        tmpFile = File.createTempFile("jcaki", ".gz");
+        lines = new ArrayList<String>();
+        for (int i = 0; i < 50000; i++) {
+            lines.add("line " + i + " çşğ");
+        }
+    }
+
+    @After
+    public void after() {
+        tmpFile.delete();
+    }
+
+    @Test
+    public void gzipTest() throws IOException {
+        new SimpleTextWriter.Builder(tmpFile).encoding("utf-8").compressed(Codecs.GZIP).build().writeLines(lines);
+        Assert.assertEquals(Codecs.GZIP, Codecs.detect(new BufferedInputStream(new FileInputStream(tmpFile)),
+                Codecs.ZLIB, Codecs.GZIP));
+        SimpleTextReader reader = new SimpleTextReader.Builder(tmpFile).encoding("utf-8").compressed().build();
+        Assert.assertEquals(lines, reader.asStringList());
+    }
+
+    @Test
+    public void zlibAsyncTest() throws IOException {
+        SimpleTextWriter writer = new SimpleTextWriter.Builder(tmpFile)
+                .encoding("utf-8")
+                .compressed(Codecs.ZLIB)
+                .keepOpen()
+                .async(1024, 2)
+                .build();
+        for (String line : lines) {
+            writer.writeLine(line);
+        }
+        writer.close();
+        SimpleTextReader reader = new SimpleTextReader.Builder(tmpFile)
+                .encoding("utf-8")
+                .compressed(Codecs.GZIP, Codecs.ZLIB)
+                .trim()
+                .build();
+        Assert.assertEquals(lines, reader.asStringList());
+    }
+
+    @Test
+    public void zlibCloseTest() throws IOException {
+        OutputStream os = Codecs.ZLIB.compress(new FileOutputStream(tmpFile));
+        os.write("abc".getBytes("utf-8"));
+        os.close();
+        // second close does nothing.
+        os.close();
+        InputStream is = Codecs.ZLIB.decompress(new FileInputStream(tmpFile));
+        Assert.assertEquals("abc", new SimpleTextReader(is, "utf-8").asString());
+        is.close();
+    }
+
+    @Test
+    public void plainTest() throws IOException {
+        new SimpleTextWriter(tmpFile, "utf-8").writeLines(lines);
+        SimpleTextReader reader = new SimpleTextReader.Builder(tmpFile).encoding("utf-8").compressed().build();
+        Assert.assertEquals(lines, reader.asStringList());
+        // shorter than the header.
+        new SimpleTextWriter(tmpFile, "utf-8").write("a");
+        Assert.assertEquals("a", new SimpleTextReader.Builder(tmpFile).compressed().build().asString());
+    }
+
+    @Test(timeout = 10000)
+    public void prefetchCloseTest() throws IOException {
+        final CountDownLatch sourceClosed = new CountDownLatch(1);
+        // a source that blocks without responding to interrupts until it is closed.
+        InputStream source = new InputStream() {
+            public int read() throws IOException {
+                while (true) {
+                    try {
+                        sourceClosed.await();
+                        throw new IOException("Stream is closed.");
+                    } catch (InterruptedException e) {
+                        // ignored.
+                    }
+                }
+            }
+
+            public void close() {
+                sourceClosed.countDown();
+            }
+        };
+        new PrefetchInputStream(source).close();
+    }
+
+    @Test
+    public void builderStartsThreadOnBuildTest() throws IOException {
+        new SimpleTextWriter.Builder(tmpFile).encoding("utf-8").compressed(Codecs.GZIP).build().writeLines(lines);
+        int before = prefetchThreadCount();
+        SimpleTextReader.Builder builder = new SimpleTextReader.Builder(tmpFile).encoding("utf-8").compressed();
+        // threads of the other readers can only finish meanwhile.
+        Assert.assertTrue(prefetchThreadCount() <= before);
+        SimpleTextReader reader = builder.build();
+        Assert.assertEquals(lines, reader.asStringList());
+    }
+
+    private int prefetchThreadCount() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("PrefetchInputStream") && thread.isAlive())
+                count++;
+        }
+        return count;
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptTest() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GZIPOutputStream gos = new GZIPOutputStream(bos);
+        for (int i = 0; i < 100000; i++) {
+            gos.write(("line " + i).getBytes());
+        }
+        gos.close();
+        byte[] bytes = bos.toByteArray();
+        byte[] truncated = new byte[bytes.length / 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        new SimpleTextReader.Builder(new ByteArrayInputStream(truncated)).compressed().build().asByteArray();
+    }
+}
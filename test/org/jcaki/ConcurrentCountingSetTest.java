@@ -0,0 +1,47 @@
+package org.jcaki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentCountingSetTest {
+
+    @Test
+    public void testConcurrentAdd() throws InterruptedException {
+        final ConcurrentCountingSet<String> set = new ConcurrentCountingSet<String>(8);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        set.add("item" + (j % 100));
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals(100, set.size());
+        Assert.assertEquals(80000, set.countAll());
+        Assert.assertEquals(800, set.getCount("item42"));
+    }
+
+    @Test
+    public void testQueries() {
+        ConcurrentCountingSet<String> set = new ConcurrentCountingSet<String>();
+        set.add("Apple", "Pear", "Plum", "Apple", "Apple", "Grape", "Pear");
+        List<String> sorted = set.getSortedList();
+        Assert.assertEquals("Apple", sorted.get(0));
+        Assert.assertEquals("Pear", sorted.get(1));
+        Assert.assertEquals(2, set.sortedCountMap().get(1).intValue());
+        Assert.assertEquals(2, set.removeSmaller(2));
+        Assert.assertEquals(2, set.size());
+        Assert.assertFalse(set.contains("Plum"));
+        Assert.assertEquals(3, set.remove("Apple"));
+        Assert.assertEquals(2, set.toCountingSet().countAll());
+    }
+}
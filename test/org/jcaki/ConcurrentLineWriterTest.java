@@ -0,0 +1,151 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentLineWriterTest {
+
+    File tmpFile;
+
+    @Before
+    public void before() throws IOException {
+        tmpFile = File.createTempFile("jcaki", ".txt");
+    }
+
+    @After
+    public void after() {
+        tmpFile.delete();
+    }
+
+    @Test
+    public void multiThreadTest() throws Exception {
+        final ConcurrentLineWriter writer = new ConcurrentLineWriter(tmpFile, "utf-8", false, 100);
+        final int threadCount = 8;
+        final int lineCount = 5000;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final int t = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < lineCount; j++) {
+                            writer.writeLine("thread-" + t + " line-" + j + " çşğ");
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.close();
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(tmpFile.length(), writer.size());
+
+        List<String> lines = new SimpleTextReader(tmpFile, "utf-8").asStringList();
+        Assert.assertEquals(threadCount * lineCount, lines.size());
+        int[] next = new int[threadCount];
+        for (String line : lines) {
+            Assert.assertTrue(line, line.matches("thread-[0-9]+ line-[0-9]+ çşğ"));
+            String[] parts = line.split("[ -]");
+            int t = Integer.parseInt(parts[1]);
+            // lines of a thread are in order.
+            Assert.assertEquals(next[t]++, Integer.parseInt(parts[3]));
+        }
+    }
+
+    @Test
+    public void longLineAndAppendTest() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i % 10);
+        }
+        ConcurrentLineWriter writer = new ConcurrentLineWriter(tmpFile, "utf-8", false, 16);
+        writer.writeLine("a").writeLine(sb).writeLines(Arrays.asList("b", null));
+        writer.close();
+        writer = new ConcurrentLineWriter(tmpFile, "utf-8", true, 16);
+        writer.writeLine("c");
+        writer.flush();
+        writer.close();
+        Assert.assertEquals(Arrays.asList("a", sb.toString(), "b", "null", "c"),
+                new SimpleTextReader(tmpFile, "utf-8").asStringList());
+    }
+
+    @Test
+    public void detachTest() throws Exception {
+        final ConcurrentLineWriter writer = new ConcurrentLineWriter(tmpFile, "utf-8", false, 100);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    writer.writeLine("a").writeLine("b");
+                    writer.detach();
+                    // a new buffer is used after detach.
+                    writer.writeLine("c");
+                    writer.detach();
+                    writer.detach();
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        Assert.assertNull(failure.get());
+        // lines are written without closing the writer.
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), new SimpleTextReader(tmpFile, "utf-8").asStringList());
+        writer.close();
+    }
+
+    @Test
+    public void encodingTest() throws IOException {
+        // line ends with an unpaired surrogate.
+        ConcurrentLineWriter writer = new ConcurrentLineWriter(tmpFile, "UTF-16BE", false, 16);
+        writer.writeLine("\u015fey").writeLine("a\ud800").writeLine("b");
+        writer.close();
+        Assert.assertEquals(Arrays.asList("\u015fey", "a\ufffd", "b"),
+                new SimpleTextReader(tmpFile, "UTF-16BE").asStringList());
+        try {
+            new ConcurrentLineWriter(tmpFile, "UTF-16");
+            Assert.fail("UTF-16 writes a byte order mark.");
+        } catch (IllegalArgumentException e) {
+            // expected.
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void closedTest() throws IOException {
+        ConcurrentLineWriter writer = new ConcurrentLineWriter(tmpFile);
+        writer.close();
+        writer.writeLine("a");
+    }
+}
@@ -4,6 +4,17 @@ import org.junit.Test;
 
 import junit.framework.Assert;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+
 public class CountingSetTest {
 
     @Test
@@ -14,4 +25,285 @@ public class CountingSetTest {
         Assert.assertEquals(2, histogram.getCount("Pear"));
         Assert.assertEquals(1, histogram.getCount("Plum"));
     }
+
+    @Test
+    public void testGrowAndRemove() {
+        CountingSet<Integer> set = new CountingSet<Integer>(2);
+        for (int i = 0; i < 10000; i++) {
+            set.add(i % 1000, 1);
+        }
+        Assert.assertEquals(1000, set.size());
+        Assert.assertEquals(10000, set.countAll());
+        for (int i = 0; i < 1000; i += 2) {
+            Assert.assertEquals(10, set.remove(i));
+        }
+        Assert.assertEquals(-1, set.remove(0));
+        Assert.assertEquals(500, set.size());
+        Assert.assertFalse(set.contains(0));
+        Assert.assertTrue(set.contains(1));
+        Assert.assertEquals(0, set.getCount(0));
+        Assert.assertEquals(11, set.add(1));
+        set.add(0, 5);
+        Assert.assertEquals(5, set.getCount(0));
+        Assert.assertEquals(501, set.size());
+    }
+
+    @Test
+    public void testMapConstructorAndSortedList() {
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        map.put("a", 3);
+        map.put("b", 5);
+        map.put("c", 1);
+        CountingSet<String> set = new CountingSet<String>(map);
+        List<String> sorted = set.getSortedList();
+        Assert.assertEquals("b", sorted.get(0));
+        Assert.assertEquals("a", sorted.get(1));
+        Assert.assertEquals("c", sorted.get(2));
+        Assert.assertEquals(2, set.getFirstSorted(2).size());
+    }
+
+    @Test
+    public void testRemoveAndQueries() {
+        CountingSet<String> set = new CountingSet<String>();
+        set.add("abc", 4);
+        set.add("cde", 3);
+        set.add("efg", 4);
+        set.add("jkl", 1);
+        set.add("mno", 1);
+        set.add("xyz", 1);
+        SortedMap<Integer, Integer> countMap = set.sortedCountMap();
+        Assert.assertEquals(3, countMap.get(1).intValue());
+        Assert.assertEquals(1, countMap.get(3).intValue());
+        Assert.assertEquals(2, countMap.get(4).intValue());
+        Assert.assertEquals(4, set.maxValue());
+        Assert.assertEquals(1, set.minValue());
+        Assert.assertEquals(3, set.totalCount(2, 4));
+        Assert.assertEquals(3, set.removeSmaller(2));
+        Assert.assertEquals(2, set.removeLarger(3));
+        Assert.assertEquals(1, set.size());
+        Assert.assertEquals(3, set.countAll());
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        CountingSet<String> set = new CountingSet<String>();
+        set.add("a", "b", "c", "a");
+        Iterator<String> it = set.iterator();
+        while (it.hasNext()) {
+            if (it.next().equals("a"))
+                it.remove();
+        }
+        Assert.assertEquals(2, set.size());
+        Assert.assertFalse(set.getSet().contains("a"));
+        Assert.assertEquals(2, set.countAll());
+    }
+
+    @Test
+    public void testFirstSorted() {
+        CountingSet<Integer> set = new CountingSet<Integer>();
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            set.add(random.nextInt(3000), random.nextInt(10));
+        }
+        List<Integer> sorted = set.getSortedList();
+        for (int k : new int[]{0, 1, 7, 100, 2999, 5000}) {
+            Assert.assertEquals(sorted.subList(0, Math.min(k, sorted.size())), set.getFirstSorted(k));
+        }
+    }
+
+    @Test
+    public void testForEachTopK() {
+        CountingSet<String> set = new CountingSet<String>();
+        set.add("Apple", "Pear", "Plum", "Apple", "Apple", "Grape", "Pear");
+        final List<String> items = new ArrayList<String>();
+        final List<Integer> counts = new ArrayList<Integer>();
+        set.forEachTopK(2, new CountingSet.CountConsumer<String>() {
+            public void accept(String element, int count) {
+                items.add(element);
+                counts.add(count);
+            }
+        });
+        Assert.assertEquals(2, items.size());
+        Assert.assertEquals("Apple", items.get(0));
+        Assert.assertEquals("Pear", items.get(1));
+        Assert.assertEquals(3, counts.get(0).intValue());
+        Assert.assertEquals(2, counts.get(1).intValue());
+    }
+
+    @Test
+    public void testStatistics() {
+        CountingSet<Integer> set = new CountingSet<Integer>();
+        Random random = new Random(2);
+        for (int i = 0; i < 5000; i++) {
+            set.add(i, random.nextInt(20));
+        }
+        set.add(-1, 100000);
+        set.add(-2, 100000);
+        set.add(-3, 70000);
+        CountingSet.Statistics stats = set.statistics();
+        Assert.assertEquals(set.size(), stats.size());
+        Assert.assertEquals(set.countAll(), stats.countAll());
+        Assert.assertEquals(set.maxValue(), stats.maxValue());
+        Assert.assertEquals(set.minValue(), stats.minValue());
+        Assert.assertEquals(set.sortedCountMap(), stats.sortedCountMap());
+        int[] points = {-1, 0, 1, 5, 19, 20, 70000, 99999, 100000, 100001, Integer.MAX_VALUE};
+        for (int from : points) {
+            Assert.assertEquals(set.sizeSmaller(from), stats.sizeSmaller(from));
+            Assert.assertEquals(set.sizeLarger(from), stats.sizeLarger(from));
+            Assert.assertEquals(set.getItemsForValue(from).size(), stats.sizeOf(from));
+            for (int to : points) {
+                Assert.assertEquals(set.totalCount(from, to), stats.totalCount(from, to));
+                Assert.assertEquals(set.getItemsForValue(from, to).size(), stats.sizeBetween(from, to));
+                Assert.assertEquals(set.countPercent(from, to), stats.countPercent(from, to), 0.0001);
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyStatistics() {
+        CountingSet.Statistics stats = new CountingSet<String>().statistics();
+        Assert.assertEquals(0, stats.size());
+        Assert.assertEquals(0, stats.maxValue());
+        Assert.assertEquals(Integer.MAX_VALUE, stats.minValue());
+        Assert.assertEquals(0, stats.sizeSmaller(10));
+        Assert.assertEquals(0, stats.totalCount(0, 10));
+    }
+
+    @Test
+    public void testPruneToTopK() {
+        CountingSet<Integer> set = new CountingSet<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            set.add(i, i);
+        }
+        List<Integer> top = set.getFirstSorted(10);
+        Assert.assertEquals(990, set.pruneToTopK(10));
+        Assert.assertEquals(10, set.size());
+        for (Integer i : top) {
+            Assert.assertTrue(set.contains(i));
+        }
+        Assert.assertEquals(0, set.pruneToTopK(20));
+        Assert.assertEquals(10, set.pruneToTopK(0));
+        Assert.assertEquals(0, set.size());
+    }
+
+    @Test
+    public void testAutoPrune() {
+        CountingSet<Integer> set = new CountingSet<Integer>();
+        set.setAutoPrune(100, 50);
+        for (int i = 0; i < 10000; i++) {
+            set.add(i % 7 == 0 ? 7 : i);
+            Assert.assertTrue(set.size() <= 100);
+        }
+        Assert.assertTrue(set.contains(7));
+        Assert.assertEquals(1429, set.getCount(7));
+    }
+
+    @Test
+    public void testAutoPruneLimits() {
+        CountingSet<Integer> set = new CountingSet<Integer>();
+        try {
+            set.setAutoPrune(100, 100);
+            Assert.fail("Equal limits are accepted.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        set.setAutoPrune(100, 99);
+        for (int i = 0; i < 1000; i++) {
+            set.add(i);
+            Assert.assertTrue(set.size() <= 100);
+        }
+        // disables pruning.
+        set.setAutoPrune(0, 0);
+        for (int i = 0; i < 1000; i++) {
+            set.add(i);
+        }
+        Assert.assertEquals(1000, set.size());
+    }
+
+    @Test
+    public void testMergeAll() {
+        List<CountingSet<Integer>> sets = new ArrayList<CountingSet<Integer>>();
+        CountingSet<Integer> expected = new CountingSet<Integer>();
+        Random random = new Random(3);
+        for (int i = 0; i < 20; i++) {
+            CountingSet<Integer> set = new CountingSet<Integer>();
+            for (int j = 0; j < 2000; j++) {
+                int k = random.nextInt(5000);
+                set.add(k);
+                expected.add(k);
+            }
+            sets.add(set);
+        }
+        for (int threadCount : new int[]{1, 3, 8}) {
+            CountingSet<Integer> merged = CountingSet.mergeAll(sets, threadCount);
+            Assert.assertEquals(expected.size(), merged.size());
+            Assert.assertEquals(expected.countAll(), merged.countAll());
+            for (Integer i : expected) {
+                Assert.assertEquals(expected.getCount(i), merged.getCount(i));
+            }
+        }
+    }
+
+    @Test
+    public void testMergeAllSmallSets() {
+        List<CountingSet<String>> sets = new ArrayList<CountingSet<String>>();
+        for (int i = 0; i < 5; i++) {
+            CountingSet<String> set = new CountingSet<String>();
+            set.add("a", "b", "c" + i);
+            sets.add(set);
+        }
+        // more threads than the slots of the result.
+        CountingSet<String> merged = CountingSet.mergeAll(sets, 32);
+        Assert.assertEquals(7, merged.size());
+        Assert.assertEquals(5, merged.getCount("a"));
+        Assert.assertEquals(1, merged.getCount("c4"));
+        // merged set can still be modified.
+        for (int i = 0; i < 100; i++) {
+            merged.add("x" + i);
+        }
+        Assert.assertEquals(5, merged.remove("b"));
+        Assert.assertEquals(106, merged.size());
+        Assert.assertEquals(6, merged.add("a"));
+    }
+
+    @Test
+    public void testWriteSorted() throws IOException {
+        CountingSet<Integer> set = new CountingSet<Integer>();
+        Random random = new Random(4);
+        for (int i = 0; i < 3000; i++) {
+            set.add(random.nextInt(500), random.nextInt(4));
+        }
+        set.add(1000, 123456);
+        File file = File.createTempFile("jcaki", ".txt");
+        try {
+            List<Integer> sorted = set.getSortedList();
+            for (int bufferSize : new int[]{1, 7, 100, 1000000}) {
+                set.writeSorted(file, " ", bufferSize);
+                List<String> lines = new SimpleTextReader(file, "utf-8").asStringList();
+                Assert.assertEquals(sorted.size(), lines.size());
+                for (int i = 0; i < sorted.size(); i++) {
+                    Assert.assertEquals(sorted.get(i) + " " + set.getCount(sorted.get(i)), lines.get(i));
+                }
+            }
+            Comparator<Integer> natural = new Comparator<Integer>() {
+                public int compare(Integer o1, Integer o2) {
+                    return o1.compareTo(o2);
+                }
+            };
+            set.writeSorted(file, natural, ":");
+            List<String> lines = new SimpleTextReader(file, "utf-8").asStringList();
+            Assert.assertEquals("1000:123456", lines.get(lines.size() - 1));
+            List<Integer> naturalOrder = set.getSortedList(natural);
+            for (int bufferSize : new int[]{1, 7, 100}) {
+                set.writeSorted(file, natural, ":", bufferSize);
+                Assert.assertEquals(lines, new SimpleTextReader(file, "utf-8").asStringList());
+            }
+            Assert.assertEquals(naturalOrder.size(), lines.size());
+            for (int i = 0; i < naturalOrder.size(); i++) {
+                Assert.assertEquals(naturalOrder.get(i) + ":" + set.getCount(naturalOrder.get(i)), lines.get(i));
+            }
+        } finally {
+            file.delete();
+        }
+    }
 }
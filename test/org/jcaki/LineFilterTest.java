@@ -0,0 +1,68 @@
+package org.jcaki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class LineFilterTest {
+
+    private static final String[] PREFIXES = {"#", "//", "#!", "a", "ab"};
+
+    // reference filter that checks the constraints one by one on the trimmed String.
+    private LineFilter reference(boolean trim, boolean ignoreWhiteSpaceLines, final String[] prefixes, String regexp) {
+        Filter<String> prefixFilter = new Filter<String>() {
+            public boolean canPass(String s) {
+                for (String prefix : prefixes) {
+                    if (s.startsWith(prefix))
+                        return false;
+                }
+                return true;
+            }
+        };
+        java.util.List<Filter> filters = new java.util.ArrayList<Filter>();
+        if (ignoreWhiteSpaceLines)
+            filters.add(StringFilters.PASS_ONLY_TEXT);
+        if (regexp != null)
+            filters.add(StringFilters.newRegexpFilter(regexp));
+        if (prefixes != null)
+            filters.add(prefixFilter);
+        return LineFilter.of(trim, filters.toArray(new Filter[filters.size()]));
+    }
+
+    private String randomLine(Random r) {
+        String chars = " \t#/!abc1ç";
+        int length = r.nextInt(8);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(chars.charAt(r.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void compiledFilterMatchesReference() {
+        Random r = new Random(1);
+        String[][] prefixOptions = {null, PREFIXES, {""}, {"#"}};
+        String[] regexps = {null, "^[a-c]", "[0-9]$", "b"};
+        for (int trim = 0; trim < 2; trim++) {
+            for (int ws = 0; ws < 2; ws++) {
+                for (String[] prefixes : prefixOptions) {
+                    for (String regexp : regexps) {
+                        LineFilter compiled = LineFilter.compile(trim == 1, ws == 1, prefixes, regexp);
+                        LineFilter reference = reference(trim == 1, ws == 1, prefixes, regexp);
+                        for (int i = 0; i < 2000; i++) {
+                            String line = randomLine(r);
+                            Assert.assertEquals("line:[" + line + "]", reference.apply(line), compiled.apply(line));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyRegexpTest() {
+        LineFilter.compile(false, false, null, "");
+    }
+}
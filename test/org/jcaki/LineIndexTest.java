@@ -0,0 +1,113 @@
+package org.jcaki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class LineIndexTest {
+
+    private File createFile(String content, boolean bom) throws IOException {
+        File file = File.createTempFile("jcaki_line_index", ".txt");
+        file.deleteOnExit();
+        LineIndex.sidecarFile(file).deleteOnExit();
+        OutputStream os = new FileOutputStream(file);
+        if (bom)
+            os.write(new byte[]{(byte) 0xef, (byte) 0xbb, (byte) 0xbf});
+        os.write(content.getBytes("UTF-8"));
+        os.close();
+        return file;
+    }
+
+    private String randomContent(Random r, int lineCount) {
+        String[] terminators = {"\n", "\r", "\r\n"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lineCount; i++) {
+            sb.append("line ").append(i).append(r.nextBoolean() ? " çğü" : "");
+            if (i < lineCount - 1 || r.nextBoolean())
+                sb.append(terminators[r.nextInt(terminators.length)]);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void indexTest() throws IOException {
+        Random r = new Random(3);
+        for (int lineCount : new int[]{0, 1, 2, 10, 5000}) {
+            // a BOM is a part of the first line for the index, so BOM only file has a single line.
+            File file = createFile(randomContent(r, lineCount), lineCount > 0 && lineCount % 2 == 0);
+            List<String> expected = new SimpleTextReader(file, "utf-8").asStringList();
+            Assert.assertEquals(lineCount, expected.size());
+            for (int interval : new int[]{1, 3, 64}) {
+                LineIndex index = LineIndex.build(file, interval);
+                Assert.assertEquals(lineCount, index.lineCount());
+                Assert.assertTrue(index.isValidFor(file));
+                File indexFile = LineIndex.sidecarFile(file);
+                index.save(indexFile);
+                LineIndex loaded = LineIndex.load(indexFile);
+                Assert.assertEquals(index.lineCount(), loaded.lineCount());
+                for (long i = 0; i < lineCount; i++) {
+                    Assert.assertEquals(index.offsetBefore(i), loaded.offsetBefore(i));
+                    Assert.assertEquals(i - i % interval, loaded.indexedLineBefore(i));
+                }
+            }
+            for (int interval : new int[]{1, 3, LineIndex.DEFAULT_INTERVAL}) {
+                SimpleTextReader reader = new SimpleTextReader.Builder(file)
+                        .encoding("utf-8")
+                        .lineIndexInterval(interval)
+                        .build();
+                for (int i = 0; i < 100 && lineCount > 0; i++) {
+                    int n = r.nextInt(lineCount);
+                    Assert.assertEquals(expected.get(n), reader.readLine(n));
+                    int to = n + r.nextInt(20);
+                    Assert.assertEquals(expected.subList(n, Math.min(to, lineCount)), reader.readLines(n, to));
+                }
+                Assert.assertNull(reader.readLine(lineCount));
+                reader.close();
+                Assert.assertEquals(interval, LineIndex.load(LineIndex.sidecarFile(file)).interval());
+            }
+        }
+    }
+
+    @Test
+    public void sidecarTest() throws IOException {
+        File file = createFile("a\nb\nc", false);
+        File sidecar = LineIndex.sidecarFile(file);
+        sidecar.delete();
+        Assert.assertEquals("b", new SimpleTextReader(file, "utf-8").readLine(1));
+        Assert.assertTrue(sidecar.exists());
+        Assert.assertEquals(LineIndex.DEFAULT_INTERVAL, LineIndex.load(sidecar).interval());
+        Assert.assertEquals(3, LineIndex.forFile(file, 1).lineCount());
+        // sidecar with a different interval is rebuilt.
+        Assert.assertEquals(2, LineIndex.forFile(file, 2).interval());
+        Assert.assertEquals(2, LineIndex.load(sidecar).interval());
+    }
+
+    @Test
+    public void readLinesKeepsPositionTest() throws IOException {
+        Random r = new Random(5);
+        File file = createFile(randomContent(r, 20000), true);
+        String expected = new SimpleTextReader(file, "utf-8").asString();
+        SimpleTextReader reader = new SimpleTextReader(file, "utf-8");
+        Assert.assertEquals(Arrays.asList("line 5", "line 6"), trimSuffix(reader.readLines(5, 7)));
+        Assert.assertEquals(expected, reader.asString());
+        reader = new SimpleTextReader(file, "utf-8");
+        reader.readLine(19999);
+        Assert.assertEquals(20000, reader.countLines());
+    }
+
+    private List<String> trimSuffix(List<String> lines) {
+        List<String> result = new ArrayList<String>();
+        for (String line : lines) {
+            result.add(line.replace(" çğü", ""));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+package org.jcaki;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class MappedCountingSetTest {
+
+    File tmpDir;
+    File tmpFile;
+
+    @Before
+    public void before() {
+        tmpDir = new File(Systems.getJavaIoTmpDir() + "/jcaki");
+        if (!tmpDir.exists())
+            tmpDir.mkdir();
+        tmpFile = new File(tmpDir, "counts.bin");
+    }
+
+    @After
+    public void after() {
+        tmpFile.delete();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        CountingSet<String> set = new CountingSet<String>();
+        set.add("Apple", "Pear", "Plum", "Apple", "Apple", "Grape", "Pear", "\u015fey", "");
+        set.add("large", 1000000);
+        set.save(tmpFile);
+        MappedCountingSet mapped = MappedCountingSet.load(tmpFile);
+        Assert.assertEquals(set.size(), mapped.size());
+        Assert.assertEquals(set.countAll(), mapped.countAll());
+        for (String s : set) {
+            Assert.assertEquals(set.getCount(s), mapped.getCount(s));
+            Assert.assertTrue(mapped.contains(s));
+        }
+        Assert.assertEquals(0, mapped.getCount("Banana"));
+        Assert.assertFalse(mapped.contains("Appl"));
+        Assert.assertEquals("", mapped.keyAt(0));
+        CountingSet<String> copy = mapped.toCountingSet();
+        Assert.assertEquals(set.size(), copy.size());
+        for (String s : set) {
+            Assert.assertEquals(set.getCount(s), copy.getCount(s));
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        new CountingSet<String>().save(tmpFile);
+        MappedCountingSet mapped = MappedCountingSet.load(tmpFile);
+        Assert.assertEquals(0, mapped.size());
+        Assert.assertEquals(0, mapped.getCount("a"));
+        Assert.assertFalse(mapped.iterator().hasNext());
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFile() throws IOException {
+        new SimpleTextWriter(tmpFile).write("Not a counting set file.");
+        MappedCountingSet.load(tmpFile);
+    }
+
+    @Test
+    public void testCorruptFile() throws IOException {
+        CountingSet<String> set = new CountingSet<String>();
+        set.add("Apple", "Pear", "Plum", "Grape");
+        set.save(tmpFile);
+        byte[] bytes = new SimpleTextReader(tmpFile).asByteArray();
+        // truncated offset index.
+        assertCannotLoad(bytes, 26);
+        // element count larger than the file.
+        byte[] corrupt = bytes.clone();
+        corrupt[8] = 0x7f;
+        assertCannotLoad(corrupt, corrupt.length);
+        // records are checked when they are read.
+        // truncated records.
+        assertCannotRead(bytes, bytes.length - 3);
+        // offset outside of the file.
+        corrupt = bytes.clone();
+        corrupt[20] = 0x7f;
+        assertCannotRead(corrupt, corrupt.length);
+        // key length larger than the file.
+        corrupt = bytes.clone();
+        corrupt[36] = 0x7f;
+        assertCannotRead(corrupt, corrupt.length);
+        // varint that does not end.
+        corrupt = bytes.clone();
+        corrupt[corrupt.length - 1] = (byte) 0x81;
+        assertCannotRead(corrupt, corrupt.length);
+    }
+
+    private void assertCannotRead(byte[] bytes, int length) throws IOException {
+        OutputStream os = new FileOutputStream(tmpFile);
+        os.write(bytes, 0, length);
+        os.close();
+        MappedCountingSet mapped = MappedCountingSet.load(tmpFile);
+        try {
+            for (int i = 0; i < mapped.size(); i++) {
+                mapped.keyAt(i);
+                mapped.countAt(i);
+            }
+            Assert.fail("Corrupt record is read.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private void assertCannotLoad(byte[] bytes, int length) throws IOException {
+        OutputStream os = new FileOutputStream(tmpFile);
+        os.write(bytes, 0, length);
+        os.close();
+        try {
+            MappedCountingSet.load(tmpFile);
+            Assert.fail("Corrupt file is loaded.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.jcaki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MultiFileLineIteratorTest {
+
+    File[] files = {
+            new File("test/multi_line_text_file.txt"),
+            new File("test/key-value-colon-separator.txt"),
+            new File("test/multi_line_text_file.txt"),
+            new File("test/turkish_utf8_with_BOM.txt")};
+
+    private List<String> expected(SimpleTextReader.Template template) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (File file : files) {
+            lines.addAll(template.generateReader(file).asStringList());
+        }
+        return lines;
+    }
+
+    private List<String> readAll(MultiFileLineIterator it) {
+        List<String> lines = new ArrayList<String>();
+        while (it.hasNext())
+            lines.add(it.next());
+        return lines;
+    }
+
+    @Test
+    public void serialTest() throws IOException {
+        SimpleTextReader.Template template = new SimpleTextReader.Template().encoding("utf-8");
+        Assert.assertEquals(expected(template), readAll(new MultiFileLineIterator(template, files)));
+    }
+
+    @Test
+    public void prefetchTest() throws IOException {
+        SimpleTextReader.Template template = new SimpleTextReader.Template().encoding("utf-8").trim()
+                .ignoreWhiteSpaceLines();
+        for (int prefetch = 1; prefetch <= 5; prefetch++) {
+            MultiFileLineIterator it = new MultiFileLineIterator(template, Arrays.asList(files), prefetch);
+            Assert.assertEquals(expected(template), readAll(it));
+            Assert.assertFalse(it.hasNext());
+        }
+        Assert.assertFalse(new MultiFileLineIterator(template, new ArrayList<File>(), 2).hasNext());
+    }
+
+    @Test
+    public void prefetchCloseTest() throws IOException {
+        MultiFileLineIterator it = new MultiFileLineIterator(
+                new SimpleTextReader.Template(), Arrays.asList(files), 2);
+        Assert.assertTrue(it.hasNext());
+        it.next();
+        it.close();
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void missingFileTest() throws IOException {
+        List<File> fileList = new ArrayList<File>(Arrays.asList(files));
+        fileList.add(1, new File("test/no_such_file.txt"));
+        MultiFileLineIterator it = new MultiFileLineIterator(new SimpleTextReader.Template(), fileList, 3);
+        try {
+            readAll(it);
+            Assert.fail("Missing file should fail the iteration.");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+}
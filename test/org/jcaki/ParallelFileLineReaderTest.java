@@ -0,0 +1,114 @@
+package org.jcaki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParallelFileLineReaderTest {
+
+    List<File> files = Arrays.asList(
+            new File("test/multi_line_text_file.txt"),
+            new File("test/key-value-colon-separator.txt"),
+            new File("test/multi_line_text_file.txt"),
+            new File("test/turkish_utf8_with_BOM.txt"),
+            new File("test/file_for_md5.txt"));
+
+    SimpleTextReader.Template template = new SimpleTextReader.Template().encoding("utf-8").trim();
+
+    private List<String> expected() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (File file : files) {
+            lines.addAll(template.generateReader(file).asStringList());
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+
+    @Test
+    public void forEachLineTest() throws IOException {
+        for (int threads = 1; threads <= 6; threads++) {
+            ParallelFileLineReader reader = new ParallelFileLineReader(template, files, threads);
+            final AtomicLong progressLines = new AtomicLong();
+            final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+            reader.setProgressListener(new ParallelFileLineReader.ProgressListener() {
+                public void fileCompleted(File file, long lineCount, int completedFiles, int totalFiles) {
+                    progressLines.addAndGet(lineCount);
+                    completed.add(completedFiles);
+                    Assert.assertEquals(5, totalFiles);
+                }
+            });
+            final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+            reader.forEachLine(new LineConsumer() {
+                public void accept(String line) {
+                    lines.add(line);
+                }
+            });
+            Collections.sort(lines);
+            Assert.assertEquals(expected(), lines);
+            Assert.assertEquals(lines.size(), progressLines.get());
+            Collections.sort(completed);
+            Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5), completed);
+        }
+    }
+
+    @Test
+    public void iteratorTest() throws IOException {
+        for (int threads = 1; threads <= 6; threads++) {
+            ParallelFileLineReader.LineQueueIterator it =
+                    new ParallelFileLineReader(template, files, threads).iterator(2);
+            List<String> lines = new ArrayList<String>();
+            while (it.hasNext())
+                lines.add(it.next());
+            Collections.sort(lines);
+            Assert.assertEquals(expected(), lines);
+        }
+        Assert.assertFalse(new ParallelFileLineReader(new ArrayList<File>(), 2).iterator(2).hasNext());
+    }
+
+    @Test
+    public void failureTest() throws IOException {
+        List<File> withMissing = new ArrayList<File>(files);
+        withMissing.add(new File("test/no_such_file.txt"));
+        try {
+            new ParallelFileLineReader(withMissing, 2).forEachLine(new LineConsumer() {
+                public void accept(String line) {
+                }
+            });
+            Assert.fail("Missing file should fail.");
+        } catch (IOException e) {
+            // expected.
+        }
+        ParallelFileLineReader.LineQueueIterator it = new ParallelFileLineReader(withMissing, 2).iterator(2);
+        try {
+            while (it.hasNext())
+                it.next();
+            Assert.fail("Missing file should fail.");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void failureStopsOtherFilesTest() throws IOException {
+        final AtomicLong accepted = new AtomicLong();
+        try {
+            new ParallelFileLineReader(files, 1).forEachLine(new LineConsumer() {
+                public void accept(String line) {
+                    accepted.incrementAndGet();
+                    throw new IllegalArgumentException("fail");
+                }
+            });
+            Assert.fail("Consumer failure should be thrown.");
+        } catch (IllegalArgumentException e) {
+            // expected.
+        }
+        Assert.assertEquals(1, accepted.get());
+    }
+}
@@ -1,12 +1,16 @@
 package org.jcaki;
 
 import static org.junit.Assert.assertEquals;
+import org.junit.Assert;
 import org.junit.Test;
 
-import java.io.IOException;
-import java.io.File;
+import java.io.*;
 import static java.lang.System.getProperty;
 import static java.lang.System.out;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -18,6 +22,8 @@ public class SimpleTextReaderTest {
     public void testUtf8() throws IOException {
         String content = new SimpleTextReader("test/turkish_utf8_with_BOM.txt", "utf-8").asString();
         assertEquals(content, "\u015fey");
+        // BOM is skipped for the aliases of UTF-8 too.
+        assertEquals("\u015fey", new SimpleTextReader("test/turkish_utf8_with_BOM.txt", "UTF8").asString());
     }
 
     @Test
@@ -100,6 +106,119 @@ public class SimpleTextReaderTest {
         IOs.closeSilently(li);
     }
 
+    @Test
+    public void countLinesTest() throws IOException {
+        Assert.assertEquals(17, new SimpleTextReader("test/multi_line_text_file.txt").countLines());
+        Assert.assertEquals(1, new SimpleTextReader("test/turkish_utf8_with_BOM.txt", "utf-8").countLines());
+        // a file with only a BOM has no lines.
+        File bomOnly = File.createTempFile("jcaki_bom", ".txt");
+        bomOnly.deleteOnExit();
+        OutputStream bomStream = new FileOutputStream(bomOnly);
+        bomStream.write(new byte[]{(byte) 0xef, (byte) 0xbb, (byte) 0xbf});
+        bomStream.close();
+        Assert.assertEquals(0, new SimpleTextReader(bomOnly, "utf-8").asStringList().size());
+        Assert.assertEquals(0, new SimpleTextReader(bomOnly, "utf-8").countLines());
+        Assert.assertEquals(0, new SimpleTextReader.Builder(bomOnly).encoding("utf-8").trim().build().countLines());
+        SimpleTextReader.Template template = new SimpleTextReader.Template().trim().ignoreIfStartsWith("#", "4");
+        File file = new File("test/key-value-colon-separator.txt");
+        Assert.assertEquals(template.generateReader(file).asStringList().size(),
+                template.generateReader(file).countLines());
+        Assert.assertEquals(3, template.generateReader(file).countLines());
+        SimpleTextReader.Template noBlanks = new SimpleTextReader.Template().ignoreWhiteSpaceLines();
+        File multiLine = new File("test/multi_line_text_file.txt");
+        Assert.assertEquals(12, noBlanks.generateReader(multiLine).countLines());
+        Assert.assertEquals(noBlanks.generateReader(multiLine).asStringList().size(),
+                noBlanks.generateReader(multiLine).countLines());
+    }
+
+    @Test
+    public void parallelLinesTest() throws IOException {
+        File file = File.createTempFile("jcaki_parallel", ".txt");
+        file.deleteOnExit();
+        // larger than a few ranges, with a BOM and mixed line terminators.
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+        os.write(new byte[]{(byte) 0xef, (byte) 0xbb, (byte) 0xbf});
+        for (int i = 0; i < 300000; i++) {
+            os.write((" line \u00e7\u0131 " + i + (i % 3 == 0 ? "\r\n" : "\n")).getBytes("UTF-8"));
+            if (i % 1000 == 0)
+                os.write("# comment\n".getBytes("UTF-8"));
+        }
+        os.close();
+        SimpleTextReader.Template template = new SimpleTextReader.Template().encoding("utf-8").trim()
+                .ignoreIfStartsWith("#");
+        final List<String> expected = template.generateReader(file).asStringList();
+        Assert.assertEquals(300000, expected.size());
+
+        final List<String> ordered = new ArrayList<String>();
+        template.generateReader(file).parallelLines(4, true, new LineConsumer() {
+            public void accept(String line) {
+                ordered.add(line);
+            }
+        });
+        Assert.assertEquals(expected, ordered);
+
+        final List<String> unordered = Collections.synchronizedList(new ArrayList<String>());
+        template.generateReader(file).parallelLines(4, new LineConsumer() {
+            public void accept(String line) {
+                unordered.add(line);
+            }
+        });
+        Assert.assertEquals(new HashSet<String>(expected), new HashSet<String>(unordered));
+        Assert.assertEquals(expected.size(), unordered.size());
+    }
+
+    @Test
+    public void batchTest() throws IOException {
+        SimpleTextReader.Template template = new SimpleTextReader.Template().trim().ignoreWhiteSpaceLines();
+        File file = new File("test/multi_line_text_file.txt");
+        final List<String> expected = template.generateReader(file).asStringList();
+        for (int batchSize = 1; batchSize <= 20; batchSize++) {
+            final List<String> lines = new ArrayList<String>();
+            final int max = batchSize;
+            template.generateReader(file).forEachBatch(batchSize, new BatchConsumer() {
+                public void accept(String[] batch, int count) {
+                    Assert.assertTrue(count > 0 && count <= max);
+                    lines.addAll(Arrays.asList(batch).subList(0, count));
+                }
+            });
+            Assert.assertEquals(expected, lines);
+        }
+        // mixing with hasNext and next.
+        LineIterator li = template.generateReader(file).getLineIterator();
+        Assert.assertTrue(li.hasNext());
+        List<String> lines = new ArrayList<String>();
+        Assert.assertEquals(5, li.nextBatch(lines, 5));
+        lines.add(li.next());
+        while (li.nextBatch(lines, 3) > 0) {
+        }
+        Assert.assertEquals(expected, lines);
+        Assert.assertFalse(li.hasNext());
+        Assert.assertEquals(0, li.nextBatch(new String[4]));
+    }
+
+    @Test
+    public void fileAsStringTest() throws IOException {
+        String[] contents = {"", "\n", "a", "a\n", "a\r\n", "\r\n\r\n", "a\rb\nc\r\nd", "a\n\n", "\u00e7\u0131\r\n\u00fc"};
+        for (String content : contents) {
+            for (String encoding : new String[]{"utf-8", "UTF-16", "ISO-8859-9"}) {
+                File file = File.createTempFile("jcaki_as_string", ".txt");
+                file.deleteOnExit();
+                byte[] bytes = content.getBytes(encoding);
+                OutputStream os = new FileOutputStream(file);
+                if (encoding.equals("utf-8"))
+                    os.write(new byte[]{(byte) 0xef, (byte) 0xbb, (byte) 0xbf});
+                os.write(bytes);
+                os.close();
+                String expected = IOs.readAsString(IOs.getReader(new FileInputStream(file), encoding));
+                Assert.assertEquals(expected, new SimpleTextReader(file, encoding).asString());
+                Assert.assertEquals(expected.trim(),
+                        new SimpleTextReader.Template().encoding(encoding).trim().generateReader(file).asString());
+                byte[] fileBytes = IOs.readAsByteArray(new FileInputStream(file));
+                Assert.assertArrayEquals(fileBytes, new SimpleTextReader(file, encoding).asByteArray());
+            }
+        }
+    }
+
     public static void main(String[] args) {
         Pattern patten = Pattern.compile("^[#]+");
 
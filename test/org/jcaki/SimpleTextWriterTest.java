@@ -22,8 +22,10 @@ import org.junit.Test;
 import org.junit.Assert;
 import org.junit.After;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -89,4 +91,103 @@ public class SimpleTextWriterTest {
             Assert.assertEquals( read.get(i), strs.get(i));
         }
     }
+
+    @Test
+    public void writeLineTest() throws IOException {
+        SimpleTextWriter sfw = new SimpleTextWriter.Builder(tmpFile).keepOpen().build();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        sfw.writeLine("Hello")
+                .writeLine(sb)
+                .writeLine("xxWorldxx".toCharArray(), 2, 5)
+                .writeLine()
+                .append(0).writeLine()
+                .append(-42).writeLine()
+                .append(Integer.MIN_VALUE).writeLine()
+                .append(Long.MAX_VALUE).writeLine()
+                .append(Long.MIN_VALUE).writeLine();
+        sfw.close();
+        List<String> read = new SimpleTextReader(tmpFile).asStringList();
+        Assert.assertEquals(Arrays.asList("Hello", sb.toString(), "World", "", "0", "-42",
+                String.valueOf(Integer.MIN_VALUE), String.valueOf(Long.MAX_VALUE), String.valueOf(Long.MIN_VALUE)), read);
+    }
+
+    @Test
+    public void builderEncodingTest() throws IOException {
+        new SimpleTextWriter.Builder(tmpFile).encoding("utf-8").build().write("çşğ\u4e2d");
+        Assert.assertEquals("çşğ\u4e2d", new SimpleTextReader(tmpFile, "utf-8").asString());
+        new SimpleTextWriter.Builder(tmpFile).encoding("ISO-8859-9").build().write("çşğ");
+        Assert.assertEquals("çşğ", new SimpleTextReader(tmpFile, "ISO-8859-9").asString());
+    }
+
+    @Test
+    public void asyncTest() throws IOException {
+        SimpleTextWriter sfw = new SimpleTextWriter.Builder(tmpFile).encoding("utf-8").keepOpen().async(100, 2).build();
+        Assert.assertTrue(sfw.isAsync());
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add("line " + i + " çş");
+            sfw.writeLine(lines.get(i));
+        }
+        sfw.flush();
+        Assert.assertEquals(lines, new SimpleTextReader(tmpFile, "utf-8").asStringList());
+        sfw.writeLine("last");
+        sfw.close();
+        lines.add("last");
+        Assert.assertEquals(lines, new SimpleTextReader(tmpFile, "utf-8").asStringList());
+        Assert.assertEquals(0, sfw.getDroppedByteCount());
+    }
+
+    @Test
+    public void asyncDropTest() throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        OutputStream slow = new OutputStream() {
+            public void write(int b) throws IOException {
+                bos.write(b);
+            }
+
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    throw new IOException();
+                }
+                bos.write(b, off, len);
+            }
+        };
+        SimpleTextWriter sfw = new SimpleTextWriter.Builder(slow)
+                .encoding("utf-8")
+                .keepOpen()
+                .async(64, 1, SimpleTextWriter.OverflowPolicy.DROP)
+                .build();
+        int written = 0;
+        for (int i = 0; i < 1000; i++) {
+            String line = "line-" + i;
+            sfw.writeLine(line);
+            written += line.length() + IOs.LINE_SEPARATOR.length();
+        }
+        sfw.close();
+        Assert.assertTrue(sfw.getDroppedByteCount() > 0);
+        String[] lines = new String(bos.toByteArray(), "utf-8").split(IOs.LINE_SEPARATOR);
+        int read = 0;
+        for (String line : lines) {
+            Assert.assertTrue(line, line.matches("line-[0-9]+"));
+            read += line.length() + IOs.LINE_SEPARATOR.length();
+        }
+        Assert.assertEquals(written, read + sfw.getDroppedByteCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void asyncFailureTest() throws IOException {
+        OutputStream failing = new OutputStream() {
+            public void write(int b) throws IOException {
+                throw new IOException("failed");
+            }
+        };
+        SimpleTextWriter sfw = new SimpleTextWriter.Builder(failing).keepOpen().async(16, 1).build();
+        sfw.writeLine("Hello World");
+        sfw.flush();
+    }
 }
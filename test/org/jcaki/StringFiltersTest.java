@@ -0,0 +1,49 @@
+package org.jcaki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StringFiltersTest {
+
+    @Test
+    public void multiPrefixFilterTest() {
+        Filter<String> filter = StringFilters.newMultiPrefixFilter("#", "//", "--", "rem ", "re");
+        Assert.assertTrue(filter.canPass("# comment"));
+        Assert.assertTrue(filter.canPass("#"));
+        Assert.assertTrue(filter.canPass("// comment"));
+        Assert.assertTrue(filter.canPass("rem comment"));
+        Assert.assertTrue(filter.canPass("result"));
+        Assert.assertFalse(filter.canPass("/ half"));
+        Assert.assertFalse(filter.canPass("r"));
+        Assert.assertFalse(filter.canPass(" #"));
+        Assert.assertFalse(filter.canPass(""));
+        Assert.assertFalse(filter.canPass(null));
+
+        Filter<String> empty = StringFilters.newMultiPrefixFilter("");
+        Assert.assertTrue(empty.canPass(""));
+        Assert.assertTrue(empty.canPass("abc"));
+        Assert.assertFalse(StringFilters.newMultiPrefixFilter().canPass("abc"));
+    }
+
+    @Test
+    public void multiPrefixFilterManyPrefixes() {
+        String[] prefixes = new String[100];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = "p" + i + ":";
+        }
+        Filter<String> filter = StringFilters.newMultiPrefixFilter(prefixes);
+        for (int i = 0; i < 200; i++) {
+            String s = "p" + i + ":value";
+            Assert.assertEquals(s, i < 100, filter.canPass(s));
+        }
+    }
+
+    @Test
+    public void prefixTrieRange() {
+        PrefixTrie trie = new PrefixTrie("ab", "c");
+        Assert.assertTrue(trie.matches("  ab", 2, 4));
+        Assert.assertFalse(trie.matches("  ab", 2, 3));
+        Assert.assertTrue(trie.matches("xc", 1, 2));
+        Assert.assertFalse(trie.matches("xc", 1, 1));
+    }
+}
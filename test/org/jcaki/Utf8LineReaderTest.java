@@ -0,0 +1,105 @@
+package org.jcaki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class Utf8LineReaderTest {
+
+    private static final String[] PIECES = {"a", "bcdefgh", "çı", "€", "😀", " ", "\n", "\r",
+            "\r\n", "0123456789abcdef"};
+
+    private String randomText(Random r, int pieceCount) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pieceCount; i++) {
+            sb.append(PIECES[r.nextInt(PIECES.length)]);
+        }
+        return sb.toString();
+    }
+
+    private List<String> lines(BufferedReader reader) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null)
+            lines.add(line);
+        reader.close();
+        return lines;
+    }
+
+    private String readAll(BufferedReader reader, int bufferSize) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[bufferSize];
+        int read;
+        while ((read = reader.read(buffer, 0, bufferSize)) != -1)
+            sb.append(buffer, 0, read);
+        reader.close();
+        return sb.toString();
+    }
+
+    private InputStream stream(String s) throws IOException {
+        return new ByteArrayInputStream(s.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void readLineMatchesBufferedReader() throws IOException {
+        Random r = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            String text = randomText(r, r.nextInt(200));
+            Assert.assertEquals(lines(new BufferedReader(new InputStreamReader(stream(text), "UTF-8"))),
+                    lines(new Utf8LineReader(stream(text))));
+        }
+    }
+
+    @Test
+    public void longLines() throws IOException {
+        Random r = new Random(7);
+        String text = randomText(r, 100000).replace("\n", "").replace("\r", "") + "\n" + randomText(r, 50000);
+        Assert.assertEquals(lines(new BufferedReader(new InputStreamReader(stream(text), "UTF-8"))),
+                lines(new Utf8LineReader(stream(text))));
+    }
+
+    @Test
+    public void readChars() throws IOException {
+        Random r = new Random(9);
+        for (int i = 0; i < 200; i++) {
+            String text = randomText(r, r.nextInt(300));
+            for (int bufferSize : new int[]{1, 2, 7, 1024}) {
+                Assert.assertEquals(text, readAll(new Utf8LineReader(stream(text)), bufferSize));
+            }
+        }
+        // mixing readLine and read.
+        Utf8LineReader reader = new Utf8LineReader(stream("ab\r\ncd😀e\rf"));
+        Assert.assertEquals("ab", reader.readLine());
+        Assert.assertEquals('c', reader.read());
+        Assert.assertEquals("d😀e", reader.readLine());
+        Assert.assertEquals("f", reader.readLine());
+        Assert.assertNull(reader.readLine());
+        Assert.assertEquals(-1, reader.read());
+    }
+
+    @Test
+    public void bom() throws IOException {
+        byte[] bytes = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf, 'a', '\n', 'b'};
+        List<String> lines = lines(new Utf8LineReader(new ByteArrayInputStream(bytes)));
+        Assert.assertEquals("[a, b]", lines.toString());
+        lines = lines(new Utf8LineReader(new ByteArrayInputStream(bytes), false));
+        Assert.assertEquals("﻿a", lines.get(0));
+        byte[] onlyBom = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf};
+        Assert.assertTrue(lines(new Utf8LineReader(new ByteArrayInputStream(onlyBom))).isEmpty());
+    }
+
+    @Test
+    public void forceUTF8ShortStreams() throws IOException {
+        for (String s : new String[]{"", "a", "ab", "abc", "abcd"}) {
+            Assert.assertEquals(s, IOs.readAsString(IOs.getReader(stream(s), "utf-8")));
+        }
+    }
+}
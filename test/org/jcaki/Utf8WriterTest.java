@@ -0,0 +1,96 @@
+/*
+ *
+ * Copyright (c) 2008, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jcaki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+public class Utf8WriterTest {
+
+    private static String randomText(Random r, int length) {
+        char[] pool = {'a', 'Z', ' ', '\n', 'ç', 'ş', 'ğ', 'İ', '€', '中', '\ud834', '\udd1e'};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(pool[r.nextInt(pool.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static byte[] expected(String s) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Writer w = new OutputStreamWriter(bos, "UTF-8");
+        w.write(s);
+        w.close();
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void sameAsOutputStreamWriterTest() throws IOException {
+        Random r = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            String s = randomText(r, r.nextInt(i % 10 == 0 ? 200000 : 100));
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            Utf8Writer w = new Utf8Writer(bos);
+            // writes in random pieces so that surrogate pairs are split between the calls.
+            int p = 0;
+            while (p < s.length()) {
+                int n = Math.min(s.length() - p, r.nextInt(20));
+                switch (r.nextInt(3)) {
+                    case 0:
+                        w.write(s, p, n);
+                        break;
+                    case 1:
+                        w.write(s.toCharArray(), p, n);
+                        break;
+                    default:
+                        if (n > 0) {
+                            w.write(s.charAt(p));
+                            n = 1;
+                        }
+                }
+                p += n;
+            }
+            w.close();
+            Assert.assertTrue(Arrays.equals(expected(s), bos.toByteArray()));
+        }
+    }
+
+    @Test
+    public void fileTest() throws IOException {
+        File tmp = File.createTempFile("jcaki", ".txt");
+        tmp.deleteOnExit();
+        String s = randomText(new Random(2), 300000);
+        Utf8Writer w = new Utf8Writer(new FileOutputStream(tmp));
+        w.write(s);
+        w.flush();
+        w.write("end");
+        w.close();
+        Assert.assertTrue(Arrays.equals(expected(s + "end"), new SimpleTextReader(tmp).asByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void closedTest() throws IOException {
+        Utf8Writer w = new Utf8Writer(new ByteArrayOutputStream());
+        w.close();
+        w.write("a");
+    }
+}